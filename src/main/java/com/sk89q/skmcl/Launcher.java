@@ -94,6 +94,7 @@ public class Launcher {
 
         if (identity != null) {
             LaunchWorker task = new LaunchWorker(profile, identity);
+            task.setWorkerService(executor);
             ListenableFuture<LaunchedProcess> future = executor.submit(task);
             SwingHelper.addErrorDialogCallback(future, owner);
             LaunchWatcher watcher = new LaunchWatcher(this, future);
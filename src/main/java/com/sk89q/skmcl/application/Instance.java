@@ -36,6 +36,15 @@ public interface Instance {
      */
     Version getVersion();
 
+    /**
+     * Return whether the instance was completely installed by its updater and
+     * has not changed since, so that it can be launched without checking
+     * for updates first.
+     *
+     * @return true if verified
+     */
+    boolean isVerified();
+
     /**
      * Get a worker to update the instance.
      *
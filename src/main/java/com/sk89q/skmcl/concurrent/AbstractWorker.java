@@ -18,8 +18,12 @@
 
 package com.sk89q.skmcl.concurrent;
 
+import com.sk89q.skmcl.util.LauncherUtils;
+
 public abstract class AbstractWorker<V> extends WorkUnit implements Worker<V> {
 
+    private final TaskScope scope = new TaskScope();
+
     @Override
     public V call() throws Exception {
         run();
@@ -29,6 +33,66 @@ public abstract class AbstractWorker<V> extends WorkUnit implements Worker<V> {
     protected void run() throws Exception {
     }
 
+    /**
+     * Get the scope that tracks the work started by this worker, so that
+     * it can all be stopped by {@link #cancel()}.
+     *
+     * @return the scope
+     */
+    public TaskScope getScope() {
+        return scope;
+    }
+
+    /**
+     * Cancel the work registered with this worker's scope, including any
+     * child workers, downloads, and open connections.
+     *
+     * <p>The thread running the worker should still be interrupted.</p>
+     */
+    public void cancel() {
+        scope.cancel();
+    }
+
+    /**
+     * Throw an {@link InterruptedException} if the current thread has been
+     * interrupted or this worker has been cancelled.
+     *
+     * @throws InterruptedException thrown if interrupted or cancelled
+     */
+    public void checkInterrupted() throws InterruptedException {
+        LauncherUtils.checkInterrupted();
+        scope.checkCancelled();
+    }
+
+    /**
+     * Run the given worker as part of this one, so that it is cancelled
+     * along with this worker.
+     *
+     * @param worker the worker
+     * @param <T> the return type
+     * @return the value returned by the worker
+     * @throws Exception thrown by the worker
+     */
+    protected <T> T callChild(AbstractWorker<T> worker) throws Exception {
+        scope.addChild(worker.getScope());
+
+        try {
+            return worker.call();
+        } finally {
+            scope.remove(worker.getScope());
+        }
+    }
+
+    /**
+     * Get a worker to finish work that this worker has left to be done in
+     * the background after it has returned.
+     *
+     * @return the worker, or null if there is none
+     */
+    public AbstractWorker<?> getBackgroundWorker() {
+        return null;
+    }
+
     @Override
     public boolean shouldConfirmInterrupt() {
         return true;
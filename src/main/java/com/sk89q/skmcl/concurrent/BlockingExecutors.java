@@ -0,0 +1,150 @@
+/*
+ * SK's Minecraft Launcher
+ * Copyright (C) 2010, 2011 Albert Pham <http://www.sk89q.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.sk89q.skmcl.concurrent;
+
+import com.sk89q.skmcl.util.LauncherUtils;
+import lombok.NonNull;
+import lombok.extern.java.Log;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+
+/**
+ * Creates executors and threads for tasks that spend most of their time
+ * blocked on I/O, such as downloads and reading process output.
+ *
+ * <p>If the Java runtime supports virtual threads, each task is run on its
+ * own virtual thread, so that the number of blocked tasks is not limited by
+ * the number of platform threads. Otherwise, daemon platform threads are
+ * used. Virtual threads can be turned off by setting the system property
+ * {@code com.sk89q.skmcl.concurrent.BlockingExecutors.disableVirtualThreads}
+ * to true.</p>
+ */
+@Log
+public final class BlockingExecutors {
+
+    private static final Method newVirtualThreadPerTaskExecutor;
+    private static final Method startVirtualThread;
+
+    static {
+        Method executorMethod = null;
+        Method threadMethod = null;
+
+        if (!LauncherUtils.hasSystemProperty(BlockingExecutors.class, "disableVirtualThreads")) {
+            try {
+                executorMethod = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+                threadMethod = Thread.class.getMethod("startVirtualThread", Runnable.class);
+
+                // On Java 19 and 20, the methods exist but throw unless
+                // preview features are enabled, so start one to find out
+                threadMethod.invoke(null, new Runnable() {
+                    @Override
+                    public void run() {
+                    }
+                });
+            } catch (NoSuchMethodException e) {
+                executorMethod = null;
+                threadMethod = null;
+            } catch (Exception e) {
+                log.log(Level.INFO, "Virtual threads are not available", e);
+                executorMethod = null;
+                threadMethod = null;
+            }
+        }
+
+        newVirtualThreadPerTaskExecutor = executorMethod;
+        startVirtualThread = threadMethod;
+    }
+
+    private BlockingExecutors() {
+    }
+
+    /**
+     * Return whether tasks will be run on virtual threads.
+     *
+     * @return true if virtual threads are used
+     */
+    public static boolean isVirtual() {
+        return newVirtualThreadPerTaskExecutor != null;
+    }
+
+    /**
+     * Create an executor that starts a new thread, or re-uses an idle one,
+     * for every task.
+     *
+     * @param name the name for the threads
+     * @return the executor
+     */
+    public static ExecutorService newExecutor(@NonNull String name) {
+        if (newVirtualThreadPerTaskExecutor != null) {
+            try {
+                return (ExecutorService) newVirtualThreadPerTaskExecutor.invoke(null);
+            } catch (Exception e) {
+                log.log(Level.WARNING, "Failed to create a virtual thread executor", e);
+            }
+        }
+
+        return Executors.newCachedThreadPool(new DaemonThreadFactory(name));
+    }
+
+    /**
+     * Run the given task on a new thread.
+     *
+     * @param name the name for the thread
+     * @param task the task
+     */
+    public static void start(@NonNull String name, @NonNull Runnable task) {
+        if (startVirtualThread != null) {
+            try {
+                ((Thread) startVirtualThread.invoke(null, task)).setName(name);
+                return;
+            } catch (Exception e) {
+                log.log(Level.WARNING, "Failed to start a virtual thread", e);
+            }
+        }
+
+        Thread thread = new Thread(task, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Creates numbered daemon threads.
+     */
+    private static class DaemonThreadFactory implements ThreadFactory {
+        private final String name;
+        private final AtomicInteger count = new AtomicInteger();
+
+        private DaemonThreadFactory(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, name + " " + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
+}
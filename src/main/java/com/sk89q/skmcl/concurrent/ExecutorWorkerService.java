@@ -27,14 +27,20 @@ import lombok.NonNull;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Observable;
-import java.util.Observer;
 import java.util.concurrent.Callable;
 import java.util.concurrent.Future;
 
-public class ExecutorWorkerService extends Observable implements WorkerService, Observer {
+/**
+ * Runs workers on an executor.
+ *
+ * <p>Observers are notified when a worker is added or removed, and the
+ * progress of the running workers is sampled periodically in between.</p>
+ */
+public class ExecutorWorkerService extends Observable implements WorkerService, ProgressUpdater {
 
     private final ListeningExecutorService executor;
     private final List<WorkerFuture> inProgress = new ArrayList<WorkerFuture>();
+    private boolean sampling;
 
     public ExecutorWorkerService(@NonNull ListeningExecutorService executor) {
         this.executor = executor;
@@ -42,66 +48,83 @@ public class ExecutorWorkerService extends Observable implements WorkerService,
 
     @Override
     public double getProgress() {
-        synchronized (inProgress) {
-            if (inProgress.isEmpty()) {
-                return -1;
-            }
+        return sample().getProgress();
+    }
 
-            double progress = 0;
+    @Override
+    public String getLocalizedTitle() {
+        return sample().getLocalizedTitle();
+    }
 
-            for (WorkerFuture wf : inProgress) {
-                double p = wf.getWorker().getProgress();
+    @Override
+    public String getLocalizedStatus() {
+        return sample().getLocalizedStatus();
+    }
 
-                if (p < 0) {
-                    return -1;
-                } else {
-                    progress += p / inProgress.size();
-                }
-            }
+    /**
+     * {@inheritDoc}
+     *
+     * <p>The progress is the average of the running workers, and the title
+     * and status are those of the first worker.</p>
+     */
+    @Override
+    public ProgressSample sample() {
+        List<Worker<?>> workers = getWorkers();
 
-            return progress;
+        if (workers.isEmpty()) {
+            return ProgressSample.EMPTY;
         }
-    }
 
-    @Override
-    public String getLocalizedTitle() {
-        synchronized (inProgress) {
-            if (inProgress.isEmpty()) {
-                return null;
+        ProgressSample first = null;
+        double progress = 0;
+
+        for (Worker<?> worker : workers) {
+            ProgressSample sample = worker.sample();
+            double p = sample.getProgress();
+
+            if (first == null) {
+                first = sample;
+            }
+
+            if (p < 0 || progress < 0) {
+                progress = -1;
             } else {
-                // Use the first title
-                return inProgress.get(0).getWorker().getLocalizedTitle();
+                progress += p / workers.size();
             }
         }
+
+        return new ProgressSample(progress, first.getLocalizedTitle(), first.getLocalizedStatus());
     }
 
     @Override
-    public String getLocalizedStatus() {
-        synchronized (inProgress) {
-            if (inProgress.isEmpty()) {
-                return null;
-            } else {
-                // Use the first status
-                return inProgress.get(0).getWorker().getLocalizedStatus();
+    public boolean shouldConfirmInterrupt() {
+        for (Worker<?> worker : getWorkers()) {
+            if (worker.shouldConfirmInterrupt()) {
+                return true;
             }
         }
+
+        return false;
     }
 
-    @Override
-    public boolean shouldConfirmInterrupt() {
+    /**
+     * Get a copy of the list of running workers, so that they can be
+     * inspected without holding the lock.
+     *
+     * @return a list of workers
+     */
+    private List<Worker<?>> getWorkers() {
         synchronized (inProgress) {
+            List<Worker<?>> workers = new ArrayList<Worker<?>>(inProgress.size());
             for (WorkerFuture wf : inProgress) {
-                if (wf.getWorker().shouldConfirmInterrupt()) {
-                    return true;
-                }
+                workers.add(wf.getWorker());
             }
-
-            return false;
+            return workers;
         }
     }
 
     @Override
-    public void update(Observable o, Object arg) {
+    public void updateProgress() {
         setChanged();
         notifyObservers();
     }
@@ -109,7 +132,11 @@ public class ExecutorWorkerService extends Observable implements WorkerService,
     private void add(WorkerFuture wf) {
         synchronized (inProgress) {
             inProgress.add(wf);
-            wf.getWorker().addObserver(this);
+
+            if (!sampling) {
+                ProgressSampler.getInstance().add(this);
+                sampling = true;
+            }
         }
 
         setChanged();
@@ -119,7 +146,11 @@ public class ExecutorWorkerService extends Observable implements WorkerService,
     private void remove(WorkerFuture wf) {
         synchronized (inProgress) {
             inProgress.remove(wf);
-            wf.getWorker().deleteObserver(this);
+
+            if (inProgress.isEmpty() && sampling) {
+                ProgressSampler.getInstance().remove(this);
+                sampling = false;
+            }
         }
 
         setChanged();
@@ -152,6 +183,9 @@ public class ExecutorWorkerService extends Observable implements WorkerService,
     public void cancelAll() {
         synchronized (inProgress) {
             for (WorkerFuture wf : inProgress) {
+                if (wf.getWorker() instanceof AbstractWorker) {
+                    ((AbstractWorker<?>) wf.getWorker()).cancel();
+                }
                 wf.getFuture().cancel(true);
             }
         }
@@ -169,22 +203,17 @@ public class ExecutorWorkerService extends Observable implements WorkerService,
             final String localizedTitle,
             final String localizedStatus) {
 
-        return new AbstractWorker<V>() {
+        AbstractWorker<V> worker = new AbstractWorker<V>() {
             @Override
             public V call() throws Exception {
                 return callable.call();
             }
-
-            @Override
-            public String getLocalizedTitle() {
-                return localizedTitle;
-            }
-
-            @Override
-            public String getLocalizedStatus() {
-                return localizedStatus;
-            }
         };
+
+        // Set rather than override, so that the title and status are sampled
+        worker.setLocalizedTitle(localizedTitle);
+        worker.setLocalizedStatus(localizedStatus);
+        return worker;
     }
 
     private static class WorkerFuture {
@@ -54,6 +54,14 @@ public interface ProgressObservable {
      */
     boolean shouldConfirmInterrupt();
 
+    /**
+     * Get the progress, title and status together, so that they all
+     * describe the same moment.
+     *
+     * @return the sample
+     */
+    ProgressSample sample();
+
     /**
      * Adds an observer to the set of observers for this object, provided
      * that it is not the same as some observer already in the set.
@@ -0,0 +1,67 @@
+/*
+ * SK's Minecraft Launcher
+ * Copyright (C) 2010, 2011 Albert Pham <http://www.sk89q.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.sk89q.skmcl.concurrent;
+
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * The progress, title and status of a task, all taken at the same time.
+ */
+@ToString
+public class ProgressSample {
+
+    /**
+     * A sample with no progress information.
+     */
+    public static final ProgressSample EMPTY = new ProgressSample(-1, null, null);
+
+    @Getter private final double progress;
+    @Getter private final String localizedTitle;
+    @Getter private final String localizedStatus;
+    private final long updated;
+
+    /**
+     * Create a new sample.
+     *
+     * @param progress the progress between 0 and 1, or -1 if indeterminate
+     * @param localizedTitle the title, or null
+     * @param localizedStatus the status, or null
+     */
+    public ProgressSample(double progress, String localizedTitle, String localizedStatus) {
+        this(Long.MIN_VALUE, progress, localizedTitle, localizedStatus);
+    }
+
+    ProgressSample(long updated, double progress, String localizedTitle, String localizedStatus) {
+        this.updated = updated;
+        this.progress = progress;
+        this.localizedTitle = localizedTitle;
+        this.localizedStatus = localizedStatus;
+    }
+
+    /**
+     * Get the time at which the sampled unit was last updated.
+     *
+     * @return the time, as given by {@link System#nanoTime()}
+     */
+    long getUpdated() {
+        return updated;
+    }
+
+}
@@ -0,0 +1,105 @@
+/*
+ * SK's Minecraft Launcher
+ * Copyright (C) 2010, 2011 Albert Pham <http://www.sk89q.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.sk89q.skmcl.concurrent;
+
+import lombok.NonNull;
+import lombok.extern.java.Log;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+/**
+ * Calls every registered {@link ProgressUpdater} at a fixed interval, in a
+ * single pass on one background thread.
+ *
+ * <p>Registering and removing an updater only changes a concurrent set, so
+ * it is cheap enough to do for every download.</p>
+ */
+@Log
+public final class ProgressSampler {
+
+    public static final long INTERVAL = 500;
+    private static final ProgressSampler instance = new ProgressSampler();
+
+    private final Set<ProgressUpdater> updaters =
+            Collections.newSetFromMap(new ConcurrentHashMap<ProgressUpdater, Boolean>());
+
+    private ProgressSampler() {
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "Progress sampler");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        executor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                sample();
+            }
+        }, INTERVAL, INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Get the shared instance.
+     *
+     * @return the sampler
+     */
+    public static ProgressSampler getInstance() {
+        return instance;
+    }
+
+    /**
+     * Start calling the given updater periodically.
+     *
+     * @param updater the updater
+     */
+    public void add(@NonNull ProgressUpdater updater) {
+        updaters.add(updater);
+    }
+
+    /**
+     * Stop calling the given updater.
+     *
+     * @param updater the updater
+     */
+    public void remove(@NonNull ProgressUpdater updater) {
+        updaters.remove(updater);
+    }
+
+    private void sample() {
+        for (ProgressUpdater updater : updaters) {
+            try {
+                updater.updateProgress();
+            } catch (RuntimeException e) {
+                // Otherwise the executor would stop running this task
+                log.log(Level.WARNING, "Failed to update progress of " + updater, e);
+            }
+        }
+    }
+
+}
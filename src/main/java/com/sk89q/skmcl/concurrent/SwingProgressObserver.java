@@ -26,15 +26,10 @@ import javax.swing.*;
 import java.awt.*;
 import java.util.Observable;
 import java.util.Observer;
-import java.util.Timer;
-import java.util.TimerTask;
 
 @Log
 public final class SwingProgressObserver implements Observer {
 
-    private static final int PROGRESS_INTERVAL = 500;
-    private static final Timer timer = new Timer();
-
     private final Window parent;
     private final WorkerService workerService;
     private boolean dialogRequested = false;
@@ -90,16 +85,4 @@ public final class SwingProgressObserver implements Observer {
         checkDialogVisibility();
     }
 
-    /**
-     * Schedule a progress updater.
-     *
-     * @param updater the object to call
-     * @return a timer task that can be cancelled
-     */
-    public static TimerTask updatePeriodically(ProgressUpdater updater) {
-        TimerTask timerTask = new ProgressTimerTask(updater);
-        timer.schedule(timerTask, PROGRESS_INTERVAL, PROGRESS_INTERVAL);
-        return timerTask;
-    }
-
 }
@@ -0,0 +1,183 @@
+/*
+ * SK's Minecraft Launcher
+ * Copyright (C) 2010, 2011 Albert Pham <http://www.sk89q.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.sk89q.skmcl.concurrent;
+
+import lombok.NonNull;
+import lombok.extern.java.Log;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+
+/**
+ * Keeps track of the work that a task has started and the resources that it
+ * has open, so that all of it can be stopped at once if the task is cancelled.
+ *
+ * <p>Futures are cancelled, executors are shut down, resources are closed
+ * and child scopes are cancelled in turn. Anything added after the scope
+ * has been cancelled is cancelled right away.</p>
+ */
+@Log
+public class TaskScope {
+
+    private final Set<Object> members =
+            Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+    private boolean cancelled;
+
+    /**
+     * Cancel the given future if this scope is cancelled.
+     *
+     * @param future the future
+     * @param <T> the type of future
+     * @return the future
+     */
+    public <T extends Future<?>> T addFuture(@NonNull T future) {
+        add(future);
+        return future;
+    }
+
+    /**
+     * Shut down the given executor if this scope is cancelled.
+     *
+     * @param executor the executor
+     * @param <T> the type of executor
+     * @return the executor
+     */
+    public <T extends ExecutorService> T addExecutor(@NonNull T executor) {
+        add(executor);
+        return executor;
+    }
+
+    /**
+     * Close the given resource if this scope is cancelled.
+     *
+     * @param closeable the resource
+     * @param <T> the type of resource
+     * @return the resource
+     */
+    public <T extends Closeable> T addCloseable(@NonNull T closeable) {
+        add(closeable);
+        return closeable;
+    }
+
+    /**
+     * Cancel the given scope if this scope is cancelled.
+     *
+     * @param child the child scope
+     * @return the child scope
+     */
+    public TaskScope addChild(@NonNull TaskScope child) {
+        add(child);
+        return child;
+    }
+
+    /**
+     * Stop tracking something that was added, such as once it has completed.
+     *
+     * @param member the future, executor, resource or scope
+     */
+    public synchronized void remove(Object member) {
+        members.remove(member);
+    }
+
+    private void add(Object member) {
+        synchronized (this) {
+            if (!cancelled) {
+                members.add(member);
+                return;
+            }
+        }
+
+        cancel(member);
+    }
+
+    /**
+     * Return whether this scope has been cancelled.
+     *
+     * @return true if cancelled
+     */
+    public synchronized boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Throw an {@link InterruptedException} if this scope has been cancelled.
+     *
+     * @throws InterruptedException thrown if cancelled
+     */
+    public void checkCancelled() throws InterruptedException {
+        if (isCancelled()) {
+            throw new InterruptedException();
+        }
+    }
+
+    /**
+     * Cancel everything in this scope.
+     */
+    public void cancel() {
+        List<Object> cancelling;
+
+        synchronized (this) {
+            if (cancelled) {
+                return;
+            }
+
+            cancelled = true;
+            cancelling = new ArrayList<Object>(members);
+            members.clear();
+        }
+
+        // Stop new work from being started before closing resources
+        for (Object member : cancelling) {
+            if (!(member instanceof Closeable)) {
+                cancel(member);
+            }
+        }
+
+        for (Object member : cancelling) {
+            if (member instanceof Closeable) {
+                cancel(member);
+            }
+        }
+    }
+
+    private static void cancel(Object member) {
+        if (member instanceof TaskScope) {
+            ((TaskScope) member).cancel();
+        } else if (member instanceof ExecutorService) {
+            ((ExecutorService) member).shutdownNow();
+        } else if (member instanceof Future) {
+            ((Future<?>) member).cancel(true);
+        } else if (member instanceof Closeable) {
+            try {
+                ((Closeable) member).close();
+            } catch (IOException e) {
+                log.log(Level.FINE, "Failed to close " + member, e);
+            }
+        }
+    }
+
+}
@@ -20,34 +20,45 @@ package com.sk89q.skmcl.concurrent;
 
 import lombok.Getter;
 
+import java.util.List;
 import java.util.Observable;
 import java.util.Observer;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
 
-public class WorkUnit extends Observable implements ProgressObservable, Observer {
+/**
+ * A unit of work that reports its progress.
+ *
+ * <p>Updates only write to the unit itself, so they are cheap to make from
+ * any thread. Nothing is propagated when they are made: a unit that observes
+ * other units instead samples them whenever its progress is read, and the
+ * most recently updated unit decides the status.</p>
+ */
+public class WorkUnit implements ProgressObservable, Observer {
 
-    @Getter
-    private double offset;
+    private final AtomicLong offset = new AtomicLong();
     @Getter
     private final double percentage;
     @Getter
     private final double interval;
 
     @Getter
-    private double total;
+    private volatile double total;
 
-    private double progress = -1;
-    private String localizedStatus;
-    private String localizedTitle;
-    private boolean shouldConfirmInterrupt = false;
+    private final List<WorkUnit> sources = new CopyOnWriteArrayList<WorkUnit>();
+    private volatile long updated = Long.MIN_VALUE;
+    private volatile double progress = -1;
+    private volatile String localizedStatus;
+    private volatile String localizedTitle;
+    private volatile boolean shouldConfirmInterrupt = false;
 
     public WorkUnit() {
-        this.offset = 0;
         this.percentage = 0;
         this.interval = 0;
     }
 
     private WorkUnit(double offset, double percentage, double interval) {
-        this.offset = offset;
+        this.offset.set(Double.doubleToLongBits(offset));
         this.percentage = percentage;
         this.interval = interval;
     }
@@ -67,85 +78,188 @@ public class WorkUnit extends Observable implements ProgressObservable, Observer
         return workUnit;
     }
 
+    public double getOffset() {
+        return Double.longBitsToDouble(offset.get());
+    }
+
     public void advance() {
-        offset += interval;
+        while (true) {
+            long current = offset.get();
+            long next = Double.doubleToLongBits(Double.longBitsToDouble(current) + interval);
+            if (offset.compareAndSet(current, next)) {
+                return;
+            }
+        }
     }
 
     @Override
     public double getProgress() {
-        return progress;
+        return sample().getProgress();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>The state is taken from whichever unit, among this unit and the
+     * units that it observes, was most recently updated.</p>
+     */
+    @Override
+    public ProgressSample sample() {
+        ProgressSample best = current();
+
+        for (WorkUnit source : sources) {
+            best = sampleFrom(source, best);
+        }
+
+        return best;
     }
 
     public void setProgress(double progress) {
         this.progress = progress;
-        setChanged();
-        notifyObservers();
+        touch();
     }
 
     @Override
     public String getLocalizedStatus() {
-        return localizedStatus;
+        return sample().getLocalizedStatus();
     }
 
     public void setLocalizedStatus(String localizedStatus) {
         this.localizedStatus = localizedStatus;
-        setChanged();
-        notifyObservers();
+        touch();
     }
 
     public void push(double progress, String localizedStatus) {
         this.progress = progress;
         this.localizedStatus = localizedStatus;
-        setChanged();
-        notifyObservers();
+        touch();
     }
 
     @Override
     public String getLocalizedTitle() {
-        return localizedTitle;
+        return sample().getLocalizedTitle();
     }
 
     public void setLocalizedTitle(String localizedTitle) {
         this.localizedTitle = localizedTitle;
-        setChanged();
-        notifyObservers();
+        touch();
     }
 
     @Override
     public boolean shouldConfirmInterrupt() {
-        return shouldConfirmInterrupt;
+        if (shouldConfirmInterrupt) {
+            return true;
+        }
+
+        for (WorkUnit source : sources) {
+            if (source.shouldConfirmInterrupt()) {
+                return true;
+            }
+        }
+
+        return false;
     }
 
     public void setShouldConfirmInterrupt(boolean shouldConfirmInterrupt) {
         this.shouldConfirmInterrupt = shouldConfirmInterrupt;
-        setChanged();
-        notifyObservers();
+        touch();
+    }
+
+    private void touch() {
+        updated = System.nanoTime();
     }
 
+    /**
+     * Have the given unit sample this unit's progress from now on.
+     *
+     * <p>Only other work units can observe a work unit. Other observers
+     * should read its progress periodically instead.</p>
+     *
+     * @param o the work unit
+     */
+    @Override
+    public void addObserver(Observer o) {
+        if (o instanceof WorkUnit) {
+            ((WorkUnit) o).sources.addIfAbsent(this);
+        } else {
+            throw new IllegalArgumentException(
+                    "Only work units can observe a work unit; read its progress periodically instead");
+        }
+    }
+
+    /**
+     * Stop the given unit from sampling this unit's progress.
+     *
+     * <p>The last progress sampled from this unit is kept by the other unit.</p>
+     *
+     * @param o the work unit
+     */
+    @Override
+    public void deleteObserver(Observer o) {
+        if (o instanceof WorkUnit) {
+            WorkUnit parent = (WorkUnit) o;
+            ProgressSample last = parent.sampleFrom(this, parent.current());
+
+            if (parent.sources.remove(this)) {
+                parent.record(last);
+            }
+        }
+    }
+
+    /**
+     * Does nothing, because the progress of observed units is sampled
+     * when it is read.
+     *
+     * @param o the observable
+     * @param arg the argument
+     */
     @Override
     public void update(Observable o, Object arg) {
-        if (o instanceof ProgressObservable) {
-            ProgressObservable worker = (ProgressObservable) o;
-            WorkUnit workUnit;
+    }
 
-            double progress = worker.getProgress();
+    /**
+     * Get the state of this unit itself.
+     *
+     * @return the sample
+     */
+    private ProgressSample current() {
+        return new ProgressSample(updated, progress, localizedTitle, localizedStatus);
+    }
 
-            if (progress >= 0) {
-                if (worker instanceof WorkUnit &&
-                        (workUnit = (WorkUnit) worker).getPercentage() > 0) {
-                    progress = (worker.getProgress() * workUnit.getPercentage() + workUnit.getOffset()) / getTotal();
-                }
+    /**
+     * Sample the given source and use it if it was updated more recently
+     * than the given sample.
+     *
+     * @param source the source
+     * @param best the most recent sample so far
+     * @return the more recent sample
+     */
+    private ProgressSample sampleFrom(WorkUnit source, ProgressSample best) {
+        ProgressSample sample = source.sample();
 
-                this.progress = progress;
-            }
+        if (sample.getUpdated() <= best.getUpdated()) {
+            return best;
+        }
 
-            this.localizedStatus = worker.getLocalizedStatus();
-            this.localizedTitle = worker.getLocalizedTitle();
-            this.shouldConfirmInterrupt = worker.shouldConfirmInterrupt();
+        double progress = sample.getProgress();
 
-            setChanged();
-            notifyObservers();
+        if (progress >= 0) {
+            if (source.getPercentage() > 0) {
+                progress = (progress * source.getPercentage() + source.getOffset()) / getTotal();
+            }
+        } else {
+            progress = best.getProgress();
         }
+
+        return new ProgressSample(sample.getUpdated(), progress,
+                sample.getLocalizedTitle(), sample.getLocalizedStatus());
+    }
+
+    private void record(ProgressSample sample) {
+        progress = sample.getProgress();
+        localizedStatus = sample.getLocalizedStatus();
+        localizedTitle = sample.getLocalizedTitle();
+        updated = sample.getUpdated();
     }
 
 }
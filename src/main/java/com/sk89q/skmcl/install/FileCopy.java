@@ -22,16 +22,21 @@ import lombok.Getter;
 import lombok.NonNull;
 import org.apache.commons.io.IOUtils;
 
-import java.io.BufferedOutputStream;
-import java.io.File;
-import java.io.FileOutputStream;
-import java.io.InputStream;
+import java.io.*;
+import java.nio.channels.FileChannel;
 import java.util.concurrent.Callable;
 
 import static org.apache.commons.io.IOUtils.closeQuietly;
 
 /**
  * Copies a file to another location.
+ *
+ * <p>The file is written to a temporary file next to the destination and then
+ * renamed into place, so a partially copied file is never found at the
+ * destination. A file that would be deleted after copying is simply moved
+ * instead, and other files on disk are copied with
+ * {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)}
+ * so that the data does not have to pass through the Java heap.</p>
  */
 public class FileCopy implements Runnable, Callable<File> {
 
@@ -47,20 +52,32 @@ public class FileCopy implements Runnable, Callable<File> {
 
     @Override
     public File call() throws Exception {
-        InputStream is = resource.getInputStream();
-        FileOutputStream fos = null;
-        BufferedOutputStream bos = null;
-
         destination.getParentFile().mkdirs();
 
+        FileResource fileResource = resource.getFileResource();
+
+        // The source would be deleted afterwards, so try to move it
+        if (fileResource != null && fileResource.isDeleteOnCleanup()
+                && moveTo(fileResource.getFile(), destination)) {
+            return destination;
+        }
+
+        File tempFile = File.createTempFile(destination.getName(), ".tmpcopy",
+                destination.getParentFile());
+
         try {
-            fos = new FileOutputStream(destination);
-            bos = new BufferedOutputStream(fos);
-            IOUtils.copy(is, bos);
+            if (fileResource != null) {
+                transfer(fileResource.getFile(), tempFile);
+            } else {
+                copy(resource, tempFile);
+            }
+
+            if (!moveTo(tempFile, destination)) {
+                throw new IOException(String.format(
+                        "Failed to rename %s to %s", tempFile, destination));
+            }
         } finally {
-            closeQuietly(is);
-            closeQuietly(bos);
-            closeQuietly(fos);
+            tempFile.delete();
         }
 
         resource.cleanup();
@@ -81,4 +98,81 @@ public class FileCopy implements Runnable, Callable<File> {
     public String toString() {
         return destination.getName();
     }
+
+    /**
+     * Rename a file, replacing the target if it exists.
+     *
+     * @param from the file to rename
+     * @param to the target
+     * @return true if the file was renamed
+     */
+    private static boolean moveTo(File from, File to) {
+        if (from.renameTo(to)) {
+            return true;
+        }
+
+        // Some platforms will not rename over an existing file
+        if (to.exists() && to.delete()) {
+            return from.renameTo(to);
+        }
+
+        return false;
+    }
+
+    /**
+     * Copy one file to another using channels.
+     *
+     * @param from the source file
+     * @param to the destination file
+     * @throws IOException on I/O error
+     */
+    private static void transfer(File from, File to) throws IOException {
+        FileInputStream fis = null;
+        FileOutputStream fos = null;
+
+        try {
+            fis = new FileInputStream(from);
+            fos = new FileOutputStream(to);
+            FileChannel in = fis.getChannel();
+            FileChannel out = fos.getChannel();
+            long size = in.size();
+            long position = 0;
+
+            while (position < size) {
+                long transferred = in.transferTo(position, size - position, out);
+                if (transferred == 0) {
+                    // The file got shorter since its size was read
+                    throw new EOFException("Unexpected end of " + from.getAbsolutePath());
+                }
+                position += transferred;
+            }
+        } finally {
+            closeQuietly(fis);
+            closeQuietly(fos);
+        }
+    }
+
+    /**
+     * Copy the contents of a resource to a file.
+     *
+     * @param resource the resource
+     * @param to the destination file
+     * @throws IOException on I/O error
+     */
+    private static void copy(Resource resource, File to) throws IOException {
+        InputStream is = resource.getInputStream();
+        FileOutputStream fos = null;
+        BufferedOutputStream bos = null;
+
+        try {
+            fos = new FileOutputStream(to);
+            bos = new BufferedOutputStream(fos);
+            IOUtils.copy(is, bos);
+            bos.close(); // Don't ignore a failure to write the last bytes
+        } finally {
+            closeQuietly(is);
+            closeQuietly(bos);
+            closeQuietly(fos);
+        }
+    }
 }
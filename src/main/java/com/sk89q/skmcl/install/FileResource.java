@@ -18,6 +18,8 @@
 
 package com.sk89q.skmcl.install;
 
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
 import lombok.Getter;
 import lombok.ToString;
 
@@ -30,19 +32,24 @@ import java.io.InputStream;
 public class FileResource implements Resource {
 
     @Getter private final File file;
-    private boolean delete = false;
+    @Getter private boolean deleteOnCleanup = false;
 
     public FileResource(File file) {
         this.file = file;
     }
 
     public FileResource deleteOnCleanup() {
-        this.delete = true;
+        this.deleteOnCleanup = true;
         return this;
     }
 
     @Override
-    public void setInstaller(InstallerRuntime installer) {
+    public void setInstaller(InstallerRuntime installer, Priority priority) {
+    }
+
+    @Override
+    public ListenableFuture<?> getReadyFuture() {
+        return Futures.immediateFuture(file);
     }
 
     @Override
@@ -50,9 +57,14 @@ public class FileResource implements Resource {
         return new FileInputStream(file);
     }
 
+    @Override
+    public FileResource getFileResource() {
+        return this;
+    }
+
     @Override
     public void cleanup() {
-        if (delete) {
+        if (deleteOnCleanup) {
             file.delete();
         }
     }
@@ -0,0 +1,155 @@
+/*
+ * SK's Minecraft Launcher
+ * Copyright (C) 2010, 2011 Albert Pham <http://www.sk89q.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.sk89q.skmcl.install;
+
+import lombok.Data;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.Setter;
+
+import java.io.File;
+import java.util.*;
+
+/**
+ * Remembers the last computed ETag of files along with their size and
+ * modification time, so that files that have not changed since they were
+ * last checked do not have to be read and hashed again.
+ */
+public class FingerprintIndex {
+
+    @Getter @Setter
+    private Map<String, Fingerprint> entries = new HashMap<String, Fingerprint>();
+    private transient Set<String> touched = new HashSet<String>();
+    private transient Map<String, Pending> pending = new HashMap<String, Pending>();
+
+    /**
+     * Get the ETag of the given file if it has not changed since the
+     * ETag was recorded.
+     *
+     * @param key the key for the file
+     * @param file the file
+     * @return the ETag, or null if the file has to be hashed again
+     */
+    public synchronized String get(@NonNull String key, @NonNull File file) {
+        Fingerprint fingerprint = entries.get(key);
+        touched.add(key);
+
+        if (fingerprint != null && fingerprint.matches(file)) {
+            return fingerprint.getEtag();
+        } else {
+            return null;
+        }
+    }
+
+    /**
+     * Record the ETag of the given file as it currently exists.
+     *
+     * @param key the key for the file
+     * @param file the file
+     * @param etag the ETag
+     */
+    public synchronized void put(@NonNull String key, @NonNull File file, @NonNull String etag) {
+        entries.put(key, new Fingerprint(file.length(), file.lastModified(), etag));
+        touched.add(key);
+    }
+
+    /**
+     * Record the ETag that the given file will have once it is installed.
+     *
+     * <p>The fingerprint is taken when {@link #recordPending()} is called.</p>
+     *
+     * @param key the key for the file
+     * @param file the file
+     * @param etag the ETag
+     */
+    public synchronized void expect(@NonNull String key, @NonNull File file, @NonNull String etag) {
+        pending.put(key, new Pending(file, etag));
+        touched.add(key);
+    }
+
+    /**
+     * Take the fingerprints of files that were passed to
+     * {@link #expect(String, File, String)} and have since been installed.
+     */
+    public synchronized void recordPending() {
+        for (Map.Entry<String, Pending> entry : pending.entrySet()) {
+            Pending p = entry.getValue();
+            if (p.file.exists()) {
+                put(entry.getKey(), p.file, p.etag);
+            } else {
+                entries.remove(entry.getKey());
+            }
+        }
+
+        pending.clear();
+    }
+
+    /**
+     * Remove entries that have not been looked up or recorded.
+     */
+    public synchronized void removeOldEntries() {
+        Iterator<Map.Entry<String, Fingerprint>> it = entries.entrySet().iterator();
+
+        while (it.hasNext()) {
+            if (!touched.contains(it.next().getKey())) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * The size, modification time, and ETag of a file.
+     */
+    @Data
+    public static class Fingerprint {
+        private long size;
+        private long lastModified;
+        private String etag;
+
+        public Fingerprint() {
+        }
+
+        public Fingerprint(long size, long lastModified, String etag) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.etag = etag;
+        }
+
+        /**
+         * Returns whether the given file still has this fingerprint.
+         *
+         * @param file the file
+         * @return true if the size and modification time are the same
+         */
+        public boolean matches(File file) {
+            return file.length() == size && file.lastModified() == lastModified;
+        }
+    }
+
+    private static class Pending {
+        private final File file;
+        private final String etag;
+
+        private Pending(File file, String etag) {
+            this.file = file;
+            this.etag = etag;
+        }
+    }
+
+}
@@ -18,6 +18,8 @@
 
 package com.sk89q.skmcl.install;
 
+import com.google.common.util.concurrent.ListenableFuture;
+import com.sk89q.skmcl.util.HttpDownloader;
 import lombok.Getter;
 import lombok.ToString;
 
@@ -31,7 +33,9 @@ public class HttpResource implements Resource {
     @Getter
     private final URL url;
     private FileResource resource;
+    private ListenableFuture<?> readyFuture;
     private String versionId;
+    private long size = -1;
 
     public HttpResource(URL url) {
         this.url = url;
@@ -42,9 +46,21 @@ public class HttpResource implements Resource {
         return this;
     }
 
+    public HttpResource withSize(long size) {
+        this.size = size;
+        return this;
+    }
+
     @Override
-    public void setInstaller(InstallerRuntime installer) {
-        resource = new FileResource(installer.fetch(url, versionId)).deleteOnCleanup();
+    public void setInstaller(InstallerRuntime installer, Priority priority) {
+        HttpDownloader.RemoteFile remoteFile = installer.fetch(url, versionId, size, priority);
+        resource = new FileResource(remoteFile.getDestination()).deleteOnCleanup();
+        readyFuture = remoteFile.getFuture();
+    }
+
+    @Override
+    public ListenableFuture<?> getReadyFuture() {
+        return readyFuture;
     }
 
     @Override
@@ -52,6 +68,11 @@ public class HttpResource implements Resource {
         return resource.getInputStream();
     }
 
+    @Override
+    public FileResource getFileResource() {
+        return resource;
+    }
+
     @Override
     public void cleanup() {
         resource.cleanup();
@@ -18,6 +18,11 @@
 
 package com.sk89q.skmcl.install;
 
+import com.google.common.base.Function;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
 import com.sk89q.skmcl.concurrent.AbstractWorker;
 import com.sk89q.skmcl.concurrent.WorkUnit;
 import com.sk89q.skmcl.util.*;
@@ -28,26 +33,40 @@ import java.io.IOException;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import static com.sk89q.skmcl.util.LauncherUtils.checkInterrupted;
 import static com.sk89q.skmcl.util.SharedLocale._;
 
 /**
  * Manages an installation procedure.
+ *
+ * <p>Resources are queued with a {@link Priority}. Calling the runtime
+ * installs the required resources only, after which the remaining background
+ * resources can be installed with the worker returned by
+ * {@link #getBackgroundWorker()}.</p>
+ *
+ * <p>Each task that installs a resource is started as soon as its resource
+ * is ready, on a small pool of threads, so that files are installed while
+ * others are still being downloaded. Tasks without a resource are run once
+ * every task queued before them has completed.</p>
  */
 public class InstallerRuntime extends AbstractWorker<InstallerRuntime> {
 
     private static final Logger logger = LauncherUtils.getLogger(InstallerRuntime.class);
+    private static final int INSTALL_THREADS =
+            Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors()));
 
     @Getter
     private final Environment environment;
     private final InstallLog previousLog;
     private final InstallLog newLog = new InstallLog();
     private final HttpDownloader httpDownloader;
-    private final List<Runnable> tasks = new ArrayList<Runnable>();
+    private final List<QueuedTask> tasks = new ArrayList<QueuedTask>();
+    private final List<QueuedTask> backgroundTasks = new ArrayList<QueuedTask>();
 
     @Getter
     private File temporaryDir;
@@ -74,6 +93,7 @@ public class InstallerRuntime extends AbstractWorker<InstallerRuntime> {
         this.environment = environment;
         this.previousLog = previousLog;
         httpDownloader = new HttpDownloader(executor);
+        getScope().addChild(httpDownloader.getScope());
     }
 
     /**
@@ -95,6 +115,16 @@ public class InstallerRuntime extends AbstractWorker<InstallerRuntime> {
         this.downloadDir = new File(tempDir, "download");
     }
 
+    /**
+     * Get the list of tasks for the given priority.
+     *
+     * @param priority the priority
+     * @return the list of tasks
+     */
+    private List<QueuedTask> getTasks(Priority priority) {
+        return priority == Priority.BACKGROUND ? backgroundTasks : tasks;
+    }
+
     /**
      * Copy the file from the given resource to the path.
      *
@@ -103,68 +133,219 @@ public class InstallerRuntime extends AbstractWorker<InstallerRuntime> {
      * @return the copy object
      */
     public FileCopy copyTo(Resource source, File file) {
+        return copyTo(source, file, Priority.REQUIRED);
+    }
+
+    /**
+     * Copy the file from the given resource to the path.
+     *
+     * @param source the resource
+     * @param file the destination
+     * @param priority the priority
+     * @return the copy object
+     */
+    public FileCopy copyTo(Resource source, File file, Priority priority) {
         FileCopy copy = new FileCopy(source, file);
-        source.setInstaller(this);
-        tasks.add(copy);
+        source.setInstaller(this, priority);
+        getTasks(priority).add(new QueuedTask(copy, source));
+        return copy;
+    }
+
+    /**
+     * Copy the file from the given resource into an object store.
+     *
+     * @param source the resource
+     * @param store the object store
+     * @param key the key to refer to the stored object with
+     * @return the copy object
+     */
+    public StoreCopy copyToStore(Resource source, ObjectStore store, String key) {
+        StoreCopy copy = new StoreCopy(source, store, key);
+        source.setInstaller(this, Priority.REQUIRED);
+        tasks.add(new QueuedTask(copy, source));
         return copy;
     }
 
     /**
-     * Write a version cache file.
+     * Write a fingerprint index file once all other tasks of the given
+     * priority have completed.
      *
-     * @param cache version cache
+     * @param index the fingerprint index
      * @param file the file to write to
-     * @return the given version cache file
+     * @param priority the priority
+     * @return the given fingerprint index
      */
-    public VersionCache write(final VersionCache cache, final File file) {
-        tasks.add(new Runnable() {
+    public FingerprintIndex write(final FingerprintIndex index, final File file, Priority priority) {
+        getTasks(priority).add(new QueuedTask(new Runnable() {
             @Override
             public void run() {
-                logger.log(Level.INFO, "Writing version cache to {}", file);
+                logger.log(Level.INFO, "Writing fingerprint index to {0}", file);
 
                 try {
-                    cache.removeOldEntries();
-                    Persistence.write(file, cache);
+                    index.recordPending();
+                    index.removeOldEntries();
+                    Persistence.write(file, index);
                 } catch (IOException e) {
-                    logger.log(Level.WARNING, "Failed to write version cache to {}", file);
+                    logger.log(Level.WARNING, "Failed to write fingerprint index to " + file, e);
                 }
             }
-        });
 
-        return cache;
+            @Override
+            public String toString() {
+                return file.getName();
+            }
+        }, null));
+
+        return index;
     }
 
-    File fetch(URL url) {
+    HttpDownloader.RemoteFile fetch(URL url) {
         return fetch(url, null);
     }
 
-    File fetch(URL url, String hash) {
+    HttpDownloader.RemoteFile fetch(URL url, String hash) {
+        return fetch(url, hash, -1, Priority.REQUIRED);
+    }
+
+    HttpDownloader.RemoteFile fetch(URL url, String hash, long size, Priority priority) {
         if (url.getProtocol().toLowerCase().matches("^https?")) {
-            return httpDownloader.submit(downloadDir, url, hash);
+            return httpDownloader.queue(downloadDir, url, hash, size,
+                    priority == Priority.BACKGROUND);
         } else {
             throw new IllegalArgumentException("Not sure how to download " + url);
         }
     }
 
+    /**
+     * Get a worker that waits for the remaining downloads and then installs
+     * the background resources.
+     *
+     * <p>The worker should be called after the runtime itself has returned.</p>
+     *
+     * @return the worker, or null if there are no background resources
+     */
     @Override
-    public InstallerRuntime call() throws Exception {
-        WorkUnit step1 = split(0.9),
-                step2 = split(0.1, tasks.size());
+    public AbstractWorker<InstallerRuntime> getBackgroundWorker() {
+        if (backgroundTasks.isEmpty()) {
+            return null;
+        }
+
+        AbstractWorker<InstallerRuntime> worker = new AbstractWorker<InstallerRuntime>() {
+            @Override
+            public InstallerRuntime call() throws Exception {
+                install(backgroundTasks, true, this);
+                return InstallerRuntime.this;
+            }
+        };
+        worker.getScope().addChild(httpDownloader.getScope());
+        return worker;
+    }
+
+    /**
+     * Install the given tasks once their resources are ready.
+     *
+     * @param queued the tasks
+     * @param background true to wait for background downloads as well
+     * @param worker the worker to report progress to and cancel with
+     * @throws Exception thrown if a download or task fails
+     */
+    private void install(List<QueuedTask> queued, boolean background, AbstractWorker<?> worker)
+            throws Exception {
+        WorkUnit step1 = worker.split(0.9),
+                step2 = worker.split(0.1, queued.size());
 
-        step1.push(0, _("installer.preparingDownload", tasks.size()));
+        step1.push(0, _("installer.preparingDownload", queued.size()));
 
-        httpDownloader.addObserver(step1);
-        httpDownloader.call();
+        ListeningExecutorService installExecutor = worker.getScope().addExecutor(
+                MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(INSTALL_THREADS)));
+        List<ListenableFuture<?>> futures = new ArrayList<ListenableFuture<?>>();
 
-        for (Runnable task : tasks) {
-            checkInterrupted();
-            step2.push(0, _("installer.installing", task.toString()));
-            logger.log(Level.INFO, "Executing {0}...", task.toString());
-            task.run();
-            step2.advance();
+        try {
+            for (QueuedTask task : queued) {
+                futures.add(task.schedule(installExecutor));
+            }
+
+            httpDownloader.addObserver(step1);
+            try {
+                if (background) {
+                    httpDownloader.call();
+                } else {
+                    httpDownloader.awaitRequired();
+                }
+            } finally {
+                httpDownloader.deleteObserver(step1);
+            }
+
+            for (int i = 0; i < queued.size(); i++) {
+                Runnable task = queued.get(i).getTask();
+                ListenableFuture<?> future = futures.get(i);
+
+                worker.checkInterrupted();
+                step2.push(0, _("installer.installing", task.toString()));
+
+                if (future != null) {
+                    try {
+                        future.get();
+                    } catch (ExecutionException e) {
+                        Throwable cause = e.getCause();
+                        if (cause instanceof Exception) {
+                            throw (Exception) cause;
+                        } else {
+                            throw e;
+                        }
+                    }
+                } else {
+                    logger.log(Level.INFO, "Executing {0}...", task.toString());
+                    task.run();
+                }
+
+                step2.advance();
+            }
+        } finally {
+            installExecutor.shutdownNow();
+            worker.getScope().remove(installExecutor);
         }
+    }
 
+    @Override
+    public InstallerRuntime call() throws Exception {
+        install(tasks, false, this);
         return this;
     }
 
+    /**
+     * A task that installs a resource once the resource is ready.
+     */
+    private static class QueuedTask {
+        @Getter
+        private final Runnable task;
+        private final Resource resource;
+
+        private QueuedTask(Runnable task, Resource resource) {
+            this.task = task;
+            this.resource = resource;
+        }
+
+        /**
+         * Run the task on the given executor once its resource is ready.
+         *
+         * @param executor the executor
+         * @return a future, or null if the task has no resource to wait for
+         */
+        private ListenableFuture<?> schedule(ListeningExecutorService executor) {
+            if (resource == null) {
+                return null;
+            }
+
+            return Futures.transform(resource.getReadyFuture(), new Function<Object, Object>() {
+                @Override
+                public Object apply(Object input) {
+                    logger.log(Level.INFO, "Executing {0}...", task.toString());
+                    task.run();
+                    return input;
+                }
+            }, executor);
+        }
+    }
+
 }
@@ -0,0 +1,262 @@
+/*
+ * SK's Minecraft Launcher
+ * Copyright (C) 2010, 2011 Albert Pham <http://www.sk89q.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.sk89q.skmcl.install;
+
+import lombok.Data;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.java.Log;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.FileUtils;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+
+/**
+ * Keeps directories of extracted native libraries so that they can be
+ * reused between launches.
+ *
+ * <p>Each directory is named after a hash of the archives that were extracted
+ * into it (their paths, sizes, modification times and exclusion rules), so a
+ * directory is only reused if it was made from the same files. Directories
+ * are never modified once they are complete, and they are kept alive with
+ * {@link Lease}s while they are in use by this launcher. Directories that have
+ * not been used for a while are removed.</p>
+ */
+@Log
+public class NativesCache {
+
+    private static final long MAX_UNUSED_AGE = 1000L * 60 * 60 * 24 * 14;
+    private static final long MAX_TEMP_AGE = 1000L * 60 * 60 * 24;
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final Map<File, Integer> leases = new HashMap<File, Integer>();
+
+    @Getter
+    private final File dir;
+
+    /**
+     * Create a new natives cache.
+     *
+     * @param dir the directory to store extracted directories in
+     */
+    public NativesCache(@NonNull File dir) {
+        this.dir = dir;
+    }
+
+    /**
+     * Get a directory with the given archives extracted into it, extracting
+     * them if no such directory exists yet.
+     *
+     * @param archives the list of archives
+     * @return a lease on the directory, which must be closed once it is no longer used
+     * @throws IOException thrown on I/O error
+     */
+    public Lease acquire(@NonNull List<Archive> archives) throws IOException {
+        File target = new File(dir, getKey(archives));
+
+        lease(target);
+
+        try {
+            if (!target.isDirectory()) {
+                extract(archives, target);
+            } else {
+                log.log(Level.INFO, "Re-using extracted natives in {0}", target.getAbsolutePath());
+            }
+
+            target.setLastModified(System.currentTimeMillis());
+        } catch (IOException e) {
+            release(target);
+            throw e;
+        }
+
+        removeUnused();
+
+        return new Lease(target);
+    }
+
+    /**
+     * Extract the archives into a temporary directory and then move it into
+     * place, so that an incomplete directory is never used.
+     *
+     * @param archives the archives
+     * @param target the directory
+     * @throws IOException thrown on I/O error
+     */
+    private void extract(List<Archive> archives, File target) throws IOException {
+        File tempDir = new File(dir, target.getName() + "-" + System.nanoTime() + TEMP_SUFFIX);
+        ExecutorService executor = Executors.newFixedThreadPool(
+                Runtime.getRuntime().availableProcessors());
+        List<Future<?>> extracted = new ArrayList<Future<?>>();
+
+        log.log(Level.INFO, "Extracting natives to {0}", target.getAbsolutePath());
+
+        try {
+            tempDir.mkdirs();
+
+            for (Archive archive : archives) {
+                ZipExtract zipExtract = new ZipExtract(new FileResource(archive.getFile()), tempDir);
+                zipExtract.setExclude(archive.getExclude());
+                extracted.addAll(zipExtract.extract(executor));
+            }
+
+            for (Future<?> future : extracted) {
+                future.get();
+            }
+
+            if (!tempDir.renameTo(target) && !target.isDirectory()) {
+                throw new IOException(String.format(
+                        "Failed to rename %s to %s", tempDir, target));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while extracting libraries");
+        } catch (ExecutionException e) {
+            throw new IOException("Failed to extract libraries", e.getCause());
+        } finally {
+            // Cancel anything left so that the archives are closed
+            for (Future<?> future : extracted) {
+                future.cancel(true);
+            }
+            executor.shutdownNow();
+
+            // Either it was moved, or someone else extracted the same files first
+            if (tempDir.exists()) {
+                delete(tempDir);
+            }
+        }
+    }
+
+    /**
+     * Remove directories that are not leased and haven't been used in a while,
+     * as well as temporary directories left over from failed extractions.
+     */
+    private void removeUnused() {
+        File[] files = dir.listFiles();
+        long now = System.currentTimeMillis();
+
+        if (files == null) {
+            return;
+        }
+
+        for (File file : files) {
+            if (!file.isDirectory()) {
+                continue;
+            }
+
+            long maxAge = file.getName().endsWith(TEMP_SUFFIX) ? MAX_TEMP_AGE : MAX_UNUSED_AGE;
+
+            synchronized (leases) {
+                if (!leases.containsKey(file) && now - file.lastModified() > maxAge) {
+                    log.log(Level.INFO, "Removing unused natives in {0}", file.getAbsolutePath());
+                    delete(file);
+                }
+            }
+        }
+    }
+
+    private static void delete(File file) {
+        try {
+            FileUtils.deleteDirectory(file);
+        } catch (IOException e) {
+            log.log(Level.WARNING, "Failed to delete " + file.getAbsolutePath(), e);
+        }
+    }
+
+    private static void lease(File file) {
+        synchronized (leases) {
+            Integer count = leases.get(file);
+            leases.put(file, count != null ? count + 1 : 1);
+        }
+    }
+
+    private static void release(File file) {
+        synchronized (leases) {
+            Integer count = leases.get(file);
+            if (count == null || count <= 1) {
+                leases.remove(file);
+            } else {
+                leases.put(file, count - 1);
+            }
+        }
+    }
+
+    /**
+     * Get the name of the directory for the given archives.
+     *
+     * @param archives the archives
+     * @return the name
+     */
+    private static String getKey(List<Archive> archives) {
+        StringBuilder builder = new StringBuilder();
+
+        for (Archive archive : archives) {
+            File file = archive.getFile();
+            builder.append(file.getAbsolutePath()).append('\0');
+            builder.append(file.length()).append('\0');
+            builder.append(file.lastModified()).append('\0');
+            if (archive.getExclude() != null) {
+                for (String pattern : archive.getExclude()) {
+                    builder.append(pattern).append('\0');
+                }
+            }
+            builder.append('\n');
+        }
+
+        return DigestUtils.shaHex(builder.toString());
+    }
+
+    /**
+     * An archive to be extracted.
+     */
+    @Data
+    public static class Archive {
+        private final File file;
+        private final List<String> exclude;
+    }
+
+    /**
+     * Keeps an extracted directory from being removed while it is in use.
+     */
+    public static class Lease implements Closeable {
+        @Getter
+        private final File dir;
+        private boolean closed;
+
+        private Lease(File dir) {
+            this.dir = dir;
+        }
+
+        @Override
+        public synchronized void close() {
+            if (!closed) {
+                closed = true;
+                release(dir);
+            }
+        }
+    }
+
+}
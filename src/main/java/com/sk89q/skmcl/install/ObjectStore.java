@@ -0,0 +1,368 @@
+/*
+ * SK's Minecraft Launcher
+ * Copyright (C) 2010, 2011 Albert Pham <http://www.sk89q.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.sk89q.skmcl.install;
+
+import com.sk89q.skmcl.util.Persistence;
+import lombok.Data;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.java.Log;
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.io.IOUtils;
+
+import java.io.*;
+import java.nio.channels.FileLock;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Level;
+
+import static org.apache.commons.io.IOUtils.closeQuietly;
+
+/**
+ * A content-addressed store of files that is shared between profiles.
+ *
+ * <p>Objects are stored under the SHA-1 hash of their contents, and logical
+ * keys (such as the path of a version's .jar) are mapped to hashes through a
+ * small index. Profiles that need the same file will then reference the one
+ * stored copy instead of downloading and keeping their own.</p>
+ *
+ * <p>Any number of stores, in this launcher or in other processes, may be
+ * open on the same directory, so the index is only read and written while
+ * holding a lock on the directory, and it is replaced rather than being
+ * rewritten in place.</p>
+ */
+@Log
+public class ObjectStore {
+
+    private static final Map<String, Object> locks = new HashMap<String, Object>();
+
+    @Getter
+    private final File dir;
+    private final File indexFile;
+    private final File lockFile;
+    private final Object lock;
+    private ObjectIndex index;
+
+    /**
+     * Create a new object store.
+     *
+     * @param dir the directory to store objects in
+     */
+    public ObjectStore(@NonNull File dir) {
+        this.dir = dir;
+        this.indexFile = new File(dir, "index.json");
+        this.lockFile = new File(dir, "index.lock");
+        this.lock = getLock(dir);
+    }
+
+    /**
+     * Get the path where the object with the given hash is stored.
+     *
+     * @param hash the hash
+     * @return the path, which may not exist
+     */
+    public File getPath(@NonNull String hash) {
+        return new File(dir, hash.substring(0, 2) + "/" + hash);
+    }
+
+    /**
+     * Return whether an object with the given hash is stored.
+     *
+     * @param hash the hash
+     * @return true if the object exists
+     */
+    public boolean contains(@NonNull String hash) {
+        return getPath(hash).exists();
+    }
+
+    /**
+     * Get the stored object that the given key refers to.
+     *
+     * @param key the key
+     * @return the path to the object, or null if it is not stored
+     */
+    public File resolve(@NonNull String key) {
+        String hash;
+
+        synchronized (lock) {
+            hash = getIndex().getRefs().get(key);
+
+            // Another profile may have stored the object since we last looked
+            if (hash == null) {
+                index = null;
+                hash = getIndex().getRefs().get(key);
+            }
+        }
+
+        if (hash != null && contains(hash)) {
+            return getPath(hash);
+        } else {
+            return null;
+        }
+    }
+
+    /**
+     * Store the contents of the given stream and refer to it with the given key.
+     *
+     * @param key the key
+     * @param is the input stream, which will not be closed
+     * @return the path to the stored object
+     * @throws IOException on I/O error
+     */
+    public File put(@NonNull String key, @NonNull InputStream is) throws IOException {
+        MessageDigest digest = createDigest();
+        File tempFile;
+
+        dir.mkdirs();
+        tempFile = File.createTempFile("object", ".tmp", dir);
+
+        FileOutputStream fos = null;
+        BufferedOutputStream bos = null;
+
+        try {
+            fos = new FileOutputStream(tempFile);
+            bos = new BufferedOutputStream(fos);
+            IOUtils.copy(new DigestInputStream(is, digest), bos);
+        } catch (IOException e) {
+            closeQuietly(bos);
+            tempFile.delete();
+            throw e;
+        } finally {
+            closeQuietly(bos);
+            closeQuietly(fos);
+        }
+
+        String hash = new String(Hex.encodeHex(digest.digest()));
+        File path = publish(tempFile, hash);
+        link(key, hash);
+        return path;
+    }
+
+    /**
+     * Move a temporary file into its place in the store.
+     *
+     * @param tempFile the temporary file
+     * @param hash the hash of the file
+     * @return the path to the stored object
+     * @throws IOException on I/O error
+     */
+    private File publish(File tempFile, String hash) throws IOException {
+        File path = getPath(hash);
+
+        if (path.exists()) {
+            // Someone else already stored the same contents
+            tempFile.delete();
+        } else {
+            path.getParentFile().mkdirs();
+            if (!tempFile.renameTo(path) && !path.exists()) {
+                tempFile.delete();
+                throw new IOException(
+                        String.format("Failed to rename %s to %s", tempFile, path));
+            }
+            tempFile.delete();
+        }
+
+        return path;
+    }
+
+    /**
+     * Point the given key at the object with the given hash.
+     *
+     * <p>The index is re-read first, so that keys added by other stores
+     * are kept, and it is left alone if it can't be read.</p>
+     *
+     * @param key the key
+     * @param hash the hash
+     */
+    private void link(String key, String hash) {
+        synchronized (lock) {
+            RandomAccessFile lockedFile = null;
+
+            try {
+                lockedFile = lockIndex();
+
+                ObjectIndex current = readIndex();
+                if (current == null) {
+                    throw new IOException("The existing index can't be read, so not replacing it");
+                }
+
+                current.getRefs().put(key, hash);
+                writeIndex(current);
+                index = current;
+            } catch (IOException e) {
+                log.log(Level.WARNING, "Failed to write object index to " +
+                        indexFile.getAbsolutePath(), e);
+            } finally {
+                unlock(lockedFile);
+            }
+        }
+    }
+
+    /**
+     * Get the index, reading it if it hasn't been read yet.
+     *
+     * <p>Must be called while holding {@link #lock}.</p>
+     *
+     * @return the index, which is empty if it can't be read
+     */
+    private ObjectIndex getIndex() {
+        if (index == null) {
+            RandomAccessFile lockedFile = null;
+
+            try {
+                lockedFile = lockIndex();
+                index = readIndex();
+            } catch (IOException e) {
+                log.log(Level.WARNING, "Failed to lock " + lockFile.getAbsolutePath(), e);
+            } finally {
+                unlock(lockedFile);
+            }
+
+            if (index == null) {
+                // Try again next time rather than keeping an empty index
+                return new ObjectIndex();
+            }
+        }
+
+        return index;
+    }
+
+    /**
+     * Read the index from disk.
+     *
+     * @return the index, an empty index if there is none yet, or null if
+     *         it exists but can't be read
+     */
+    private ObjectIndex readIndex() {
+        if (!indexFile.exists()) {
+            return new ObjectIndex();
+        }
+
+        return Persistence.load(indexFile, ObjectIndex.class, true);
+    }
+
+    /**
+     * Replace the index on disk, by writing it to a temporary file first so
+     * that a partially written index is never read.
+     *
+     * @param index the index
+     * @throws IOException on I/O error
+     */
+    private void writeIndex(ObjectIndex index) throws IOException {
+        File tempFile = File.createTempFile("index", ".tmp", dir);
+
+        try {
+            Persistence.write(tempFile, index);
+
+            // Windows won't rename over an existing file, but readers hold the lock
+            indexFile.delete();
+            if (!tempFile.renameTo(indexFile)) {
+                throw new IOException(String.format(
+                        "Failed to rename %s to %s", tempFile, indexFile));
+            }
+        } finally {
+            tempFile.delete();
+        }
+    }
+
+    /**
+     * Lock the index against other processes.
+     *
+     * <p>Must be called while holding {@link #lock}, because a process
+     * can't hold two locks on the same file.</p>
+     *
+     * @return the locked file, to be passed to {@link #unlock(RandomAccessFile)}
+     * @throws IOException on I/O error
+     */
+    private RandomAccessFile lockIndex() throws IOException {
+        dir.mkdirs();
+        RandomAccessFile file = new RandomAccessFile(lockFile, "rw");
+
+        try {
+            FileLock fileLock = file.getChannel().lock();
+            if (fileLock == null) {
+                throw new IOException("Failed to lock " + lockFile.getAbsolutePath());
+            }
+            return file;
+        } catch (IOException e) {
+            unlock(file);
+            throw e;
+        }
+    }
+
+    /**
+     * Release the lock taken with {@link #lockIndex()}.
+     *
+     * @param file the locked file, or null
+     */
+    private static void unlock(RandomAccessFile file) {
+        if (file != null) {
+            try {
+                // Closing the file releases the lock
+                file.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    /**
+     * Get the object that stores opened on the given directory synchronize on.
+     *
+     * @param dir the directory
+     * @return the lock
+     */
+    private static Object getLock(File dir) {
+        String path;
+
+        try {
+            path = dir.getCanonicalPath();
+        } catch (IOException e) {
+            path = dir.getAbsolutePath();
+        }
+
+        synchronized (locks) {
+            Object lock = locks.get(path);
+            if (lock == null) {
+                lock = new Object();
+                locks.put(path, lock);
+            }
+            return lock;
+        }
+    }
+
+    private static MessageDigest createDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * The mapping of keys to object hashes.
+     */
+    @Data
+    public static class ObjectIndex {
+        private Map<String, String> refs = new HashMap<String, String>();
+    }
+
+}
@@ -16,21 +16,21 @@
  * along with this program. If not, see <http://www.gnu.org/licenses/>.
 */
 
-package com.sk89q.skmcl.concurrent;
+package com.sk89q.skmcl.install;
 
-import java.util.TimerTask;
+/**
+ * How soon a resource has to be installed.
+ */
+public enum Priority {
 
-class ProgressTimerTask extends TimerTask {
+    /**
+     * The resource is needed before the application can start.
+     */
+    REQUIRED,
 
-    private final ProgressUpdater updater;
-
-    public ProgressTimerTask(ProgressUpdater updater) {
-        this.updater = updater;
-    }
-
-    @Override
-    public void run() {
-        updater.updateProgress();
-    }
+    /**
+     * The resource can be installed while the application is running.
+     */
+    BACKGROUND
 
 }
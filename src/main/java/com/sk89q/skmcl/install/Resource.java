@@ -18,15 +18,36 @@
 
 package com.sk89q.skmcl.install;
 
+import com.google.common.util.concurrent.ListenableFuture;
+
 import java.io.IOException;
 import java.io.InputStream;
 
 public interface Resource {
 
-    void setInstaller(InstallerRuntime installer);
+    void setInstaller(InstallerRuntime installer, Priority priority);
+
+    /**
+     * Get a future that completes once the resource can be read, such
+     * as when it has been downloaded.
+     *
+     * @return the future, which fails if the resource will not be available
+     */
+    ListenableFuture<?> getReadyFuture();
 
     InputStream getInputStream() throws IOException;
 
+    /**
+     * Get the file on disk that holds the resource, if there is one, so
+     * that it can be read without going through a stream.
+     *
+     * <p>The returned resource may only be consumed (such as moved) if it
+     * would be deleted on cleanup anyway.</p>
+     *
+     * @return the file resource, or null if the resource is not in a file
+     */
+    FileResource getFileResource();
+
     void cleanup();
 
 }
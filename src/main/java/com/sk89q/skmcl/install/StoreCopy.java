@@ -0,0 +1,81 @@
+/*
+ * SK's Minecraft Launcher
+ * Copyright (C) 2010, 2011 Albert Pham <http://www.sk89q.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.sk89q.skmcl.install;
+
+import lombok.Getter;
+import lombok.NonNull;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.util.concurrent.Callable;
+
+import static org.apache.commons.io.IOUtils.closeQuietly;
+
+/**
+ * Copies a file into an {@link ObjectStore}.
+ */
+public class StoreCopy implements Runnable, Callable<File> {
+
+    @Getter
+    private final Resource resource;
+    @Getter
+    private final ObjectStore store;
+    @Getter
+    private final String key;
+
+    public StoreCopy(@NonNull Resource resource, @NonNull ObjectStore store, @NonNull String key) {
+        this.resource = resource;
+        this.store = store;
+        this.key = key;
+    }
+
+    @Override
+    public File call() throws Exception {
+        InputStream is = resource.getInputStream();
+        BufferedInputStream bis = null;
+        File path;
+
+        try {
+            bis = new BufferedInputStream(is);
+            path = store.put(key, bis);
+        } finally {
+            closeQuietly(bis);
+            closeQuietly(is);
+        }
+
+        resource.cleanup();
+
+        return path;
+    }
+
+    @Override
+    public void run() {
+        try {
+            call();
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return key.substring(key.lastIndexOf('/') + 1);
+    }
+}
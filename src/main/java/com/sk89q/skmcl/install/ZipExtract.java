@@ -18,20 +18,35 @@
 
 package com.sk89q.skmcl.install;
 
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListenableFutureTask;
+import com.google.common.util.concurrent.MoreExecutors;
 import lombok.Getter;
 import lombok.NonNull;
 import lombok.Setter;
 import org.apache.commons.io.IOUtils;
 
 import java.io.*;
+import java.util.ArrayList;
+import java.util.Enumeration;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 import java.util.zip.ZipInputStream;
 
 import static org.apache.commons.io.IOUtils.closeQuietly;
 
 /**
  * Extracts a ZIP file to a given destination directory.
+ *
+ * <p>If the resource is a file on disk, the archive is opened with
+ * {@link ZipFile} so that excluded entries are skipped using the central
+ * directory without being inflated, and the remaining entries can be
+ * extracted in parallel with {@link #extract(ExecutorService)}.</p>
  */
 public class ZipExtract implements Runnable {
 
@@ -55,6 +70,109 @@ public class ZipExtract implements Runnable {
 
     @Override
     public void run() {
+        try {
+            for (Future<?> future : extract(MoreExecutors.sameThreadExecutor())) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Submit the extraction of each entry to the given executor.
+     *
+     * <p>The resource is cleaned up once every entry has been extracted or
+     * its future has been cancelled, so callers that give up on the
+     * extraction should cancel the returned futures.</p>
+     *
+     * @param executor the executor
+     * @return a list of futures, which complete when the entries are extracted
+     * @throws IOException thrown if the archive can't be opened
+     */
+    public List<Future<?>> extract(ExecutorService executor) throws IOException {
+        List<Future<?>> futures = new ArrayList<Future<?>>();
+
+        destination.mkdirs();
+
+        FileResource fileResource = resource.getFileResource();
+
+        if (fileResource == null) {
+            futures.add(executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    extractStream();
+                }
+            }));
+            return futures;
+        }
+
+        final ZipFile zipFile = new ZipFile(fileResource.getFile());
+        List<ZipEntry> entries = new ArrayList<ZipEntry>();
+        Enumeration<? extends ZipEntry> en = zipFile.entries();
+
+        while (en.hasMoreElements()) {
+            ZipEntry entry = en.nextElement();
+            if (matches(entry) && !entry.isDirectory()) {
+                entries.add(entry);
+            }
+        }
+
+        if (entries.isEmpty()) {
+            zipFile.close();
+            resource.cleanup();
+            return futures;
+        }
+
+        List<ListenableFuture<?>> tasks = new ArrayList<ListenableFuture<?>>();
+
+        for (final ZipEntry entry : entries) {
+            ListenableFutureTask<?> task = ListenableFutureTask.create(new Runnable() {
+                @Override
+                public void run() {
+                    InputStream is = null;
+
+                    try {
+                        is = zipFile.getInputStream(entry);
+                        writeEntry(is, new File(getDestination(), entry.getName()));
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
+                    } finally {
+                        closeQuietly(is);
+                    }
+                }
+            }, null);
+
+            tasks.add(task);
+            futures.add(task);
+            executor.execute(task);
+        }
+
+        // Close the archive once every entry is done, including entries
+        // that were cancelled before they could run
+        Futures.successfulAsList(tasks).addListener(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    zipFile.close();
+                } catch (IOException ignored) {
+                }
+                resource.cleanup();
+            }
+        }, MoreExecutors.sameThreadExecutor());
+
+        return futures;
+    }
+
+    /**
+     * Extract the resource by reading it as a stream.
+     */
+    private void extractStream() {
         InputStream is = null;
 
         try {
@@ -62,13 +180,11 @@ public class ZipExtract implements Runnable {
             ZipInputStream zis = null;
             ZipEntry entry;
 
-            destination.getParentFile().mkdirs();
-
             try {
                 zis = new ZipInputStream(is);
 
                 while ((entry = zis.getNextEntry()) != null) {
-                    if (matches(entry)) {
+                    if (matches(entry) && !entry.isDirectory()) {
                         File file = new File(getDestination(), entry.getName());
                         writeEntry(zis, file);
                     }
@@ -106,22 +222,19 @@ public class ZipExtract implements Runnable {
     /**
      * Write an entry to a path.
      *
-     * @param zis the input stream
+     * @param is the input stream
      * @param path the path
      * @throws IOException thrown on I/O error
      */
-    private void writeEntry(ZipInputStream zis, File path) throws IOException {
+    private void writeEntry(InputStream is, File path) throws IOException {
         FileOutputStream fos = null;
-        BufferedOutputStream bos = null;
 
         try {
             path.getParentFile().mkdirs();
 
             fos = new FileOutputStream(path);
-            bos = new BufferedOutputStream(fos);
-            IOUtils.copy(zis, bos);
+            IOUtils.copy(is, fos);
         } finally {
-            closeQuietly(bos);
             closeQuietly(fos);
         }
     }
@@ -27,8 +27,10 @@ import lombok.Setter;
 import lombok.extern.java.Log;
 
 import javax.swing.*;
+import java.io.IOException;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
+import java.util.logging.Level;
 
 /**
  * An instance LaunchWatcher can be created and run in its own thread to manage the
@@ -119,6 +121,13 @@ public class LaunchWatcher implements Runnable {
             // Orphan process
         }
 
+        // Release anything that the process was using
+        try {
+            process.close();
+        } catch (IOException e) {
+            log.log(Level.WARNING, "Failed to clean up after the process", e);
+        }
+
         log.info("Process ended, re-showing launcher...");
 
         // Restore the launcher
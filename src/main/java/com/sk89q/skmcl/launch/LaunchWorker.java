@@ -18,10 +18,16 @@
 
 package com.sk89q.skmcl.launch;
 
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListenableFutureTask;
 import com.sk89q.skmcl.LauncherException;
 import com.sk89q.skmcl.application.*;
 import com.sk89q.skmcl.concurrent.AbstractWorker;
+import com.sk89q.skmcl.concurrent.BlockingExecutors;
 import com.sk89q.skmcl.concurrent.WorkUnit;
+import com.sk89q.skmcl.concurrent.WorkerService;
 import com.sk89q.skmcl.profile.Profile;
 import com.sk89q.skmcl.session.Identity;
 import com.sk89q.skmcl.swing.SwingHelper;
@@ -54,6 +60,8 @@ public class LaunchWorker extends AbstractWorker<LaunchedProcess> {
     private final Identity identity;
     @Getter @Setter
     private boolean offline;
+    @Getter @Setter
+    private WorkerService workerService;
 
     public LaunchWorker(Profile profile, @NonNull Identity identity) {
         this.profile = profile;
@@ -87,6 +95,82 @@ public class LaunchWorker extends AbstractWorker<LaunchedProcess> {
         }
     }
 
+    /**
+     * Get the instance that was last resolved, if it was verified by a
+     * previous update, so that it can be launched without contacting any
+     * servers first.
+     *
+     * @return the instance, or null if it must be resolved and updated online
+     */
+    private Instance getVerifiedInstance() {
+        try {
+            Instance instance = application.getInstance(environment, true);
+            return instance.isVerified() ? instance : null;
+        } catch (ResolutionException e) {
+            return null;
+        } catch (OnlineRequiredException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Check for updates once the given process has exited, so that files
+     * that the running application has open are never replaced.
+     *
+     * @param process the process
+     */
+    private void checkForUpdatesAfterExit(final LaunchedProcess process) {
+        BlockingExecutors.start("Update check for " + profile, new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    process.getProcess().waitFor();
+                } catch (InterruptedException e) {
+                    return;
+                }
+
+                startBackground(createUpdateCheck());
+            }
+        });
+    }
+
+    /**
+     * Create a worker that resolves the version online and then runs the
+     * whole update, including the background part, to pick up anything
+     * that changed or failed to install before.
+     *
+     * @return the worker
+     */
+    private AbstractWorker<Instance> createUpdateCheck() {
+        return new AbstractWorker<Instance>() {
+            @Override
+            public Instance call() throws Exception {
+                setLocalizedTitle(_("launch.checkingForUpdatesTitle", profile.toString()));
+                push(0, _("launch.checkingForUpdates"));
+
+                Instance instance = application.getInstance(environment, false);
+                Persistence.commitAndForget(profile);
+
+                AbstractWorker<?> updater = instance.getUpdater();
+                updater.addObserver(this);
+                callChild(updater);
+
+                AbstractWorker<?> backgroundWorker = updater.getBackgroundWorker();
+                if (backgroundWorker != null) {
+                    backgroundWorker.addObserver(this);
+                    callChild(backgroundWorker);
+                }
+
+                return instance;
+            }
+
+            @Override
+            public boolean shouldConfirmInterrupt() {
+                return false;
+            }
+        };
+    }
+
     private LaunchedProcess launch(Instance instance)
             throws IOException, UpdateRequiredException {
         LaunchContext context = new LaunchContext(environment, identity);
@@ -98,7 +182,12 @@ public class LaunchWorker extends AbstractWorker<LaunchedProcess> {
         try {
             AbstractWorker<?> updater = instance.getUpdater();
             updater.addObserver(workUnit);
-            updater.call();
+            callChild(updater);
+
+            AbstractWorker<?> backgroundWorker = updater.getBackgroundWorker();
+            if (backgroundWorker != null) {
+                startBackground(backgroundWorker);
+            }
         } catch (InterruptedException e) {
             throw e;
         } catch (Exception e) {
@@ -106,6 +195,38 @@ public class LaunchWorker extends AbstractWorker<LaunchedProcess> {
         }
     }
 
+    /**
+     * Continue the given update in the background while the application
+     * is launched.
+     *
+     * @param worker the worker
+     */
+    private void startBackground(final AbstractWorker<?> worker) {
+        ListenableFuture<?> future;
+
+        if (workerService != null) {
+            future = workerService.submit(worker);
+        } else {
+            ListenableFutureTask<?> task = ListenableFutureTask.create(worker);
+            Thread thread = new Thread(task, "Background update");
+            thread.setDaemon(true);
+            thread.start();
+            future = task;
+        }
+
+        Futures.addCallback(future, new FutureCallback<Object>() {
+            @Override
+            public void onSuccess(Object result) {
+                LaunchWorker.log.log(Level.INFO, "Background update for {0} has completed", profile);
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                LaunchWorker.log.log(Level.WARNING, "Background update for " + profile + " failed", t);
+            }
+        });
+    }
+
     @Override
     public LaunchedProcess call() throws LauncherException, InterruptedException {
         WorkUnit step1 = split(0.1),
@@ -115,6 +236,28 @@ public class LaunchWorker extends AbstractWorker<LaunchedProcess> {
         // First resolve the version (i.e. latest -> which version is "latest"?)
 
         setLocalizedTitle(_("launch.launchingTitle", profile.toString()));
+
+        // If the last update completed and nothing has changed since, launch
+        // right away and check for updates once the game has exited
+
+        if (!offline) {
+            Instance verified = getVerifiedInstance();
+
+            if (verified != null) {
+                step2.push(0, _("launch.launching"));
+
+                try {
+                    LaunchedProcess process = launch(verified);
+                    checkForUpdatesAfterExit(process);
+                    return process;
+                } catch (UpdateRequiredException e) {
+                    // Files went missing, so do the full check
+                } catch (IOException e) {
+                    throw new LauncherException(e, _("launch.launchFailed"));
+                }
+            }
+        }
+
         step1.push(0, _("launch.checkingVersion"));
 
         Instance instance = getInstance();
@@ -18,6 +18,11 @@
 
 package com.sk89q.skmcl.minecraft;
 
+import com.sk89q.skmcl.util.Persistence;
+import com.sk89q.skmcl.util.RawZipFile;
+import com.sk89q.skmcl.util.RawZipWriter;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
 import lombok.Getter;
 import lombok.NonNull;
 import lombok.Setter;
@@ -25,18 +30,16 @@ import lombok.ToString;
 import lombok.extern.java.Log;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.FilenameUtils;
-import org.apache.commons.io.IOUtils;
 import org.codehaus.jackson.annotate.JsonIgnore;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.*;
 import java.util.logging.Level;
+import java.util.zip.Deflater;
 import java.util.zip.ZipEntry;
-import java.util.zip.ZipInputStream;
-import java.util.zip.ZipOutputStream;
 
 import static org.apache.commons.io.FilenameUtils.separatorsToUnix;
-import static org.apache.commons.io.IOUtils.closeQuietly;
 
 /**
  * Builds a .jar file consisting of the contents of other .jar files.
@@ -44,13 +47,49 @@ import static org.apache.commons.io.IOUtils.closeQuietly;
  * <p>If the list of included .jar files is modified, then {@link #setDirty(boolean)}
  * should be called.</p>
  *
+ * <p>The size and modification time of every merged .jar, and the CRC and size
+ * of each of its entries, are recorded when the target .jar is built. On the
+ * next build, entries that would come from the same archive with the same CRC
+ * and size are copied from the previous target instead of being read from
+ * their archive, and archives that haven't changed aren't read at all. If
+ * nothing has changed, the target is not rebuilt.</p>
+ *
+ * <p>Entries are copied with their compressed data as is, so nothing is
+ * inflated or deflated while merging, unless a compression level is set
+ * with {@link #setCompressionLevel(int)}. With a level of 1 to 9, every entry
+ * that doesn't come from a previous build at the same level is recompressed,
+ * because the level that an archive was deflated with isn't known. Entries
+ * that have to be recompressed are compressed on all cores and written in
+ * order.</p>
+ *
+ * <p>In layered mode (see {@link #setLayered(boolean)}), no merged .jar is
+ * built at all. Instead, the patch .jars are put ahead of the base .jar on the
+ * class path by {@link #getClassPath()}. Signed .jars are replaced by copies
+ * without their signature files, which are kept until the .jar changes, so
+ * that patched classes don't fail signature checks.</p>
+ *
  * <p>Errors generated when merging in a particular JAR will be ignored, but will be
- * printed to the log.</p>
+ * printed to the log. An entry that can't be read from one JAR is taken from
+ * the next JAR that has it, or left out if none do.</p>
  */
 @Log
-@ToString
+@ToString(exclude = {"archives", "targetStamp", "layers"})
 public class JarBuilder {
 
+    private static final String BASE_ARCHIVE = "";
+    private static final int COMPRESS_AHEAD_PER_THREAD = 16;
+
+    /**
+     * Use the compression of each entry as it is.
+     */
+    public static final int KEEP_COMPRESSION = -1;
+
+    /**
+     * Store entries without compression, which makes the .jar larger but
+     * quicker to build and to read.
+     */
+    public static final int STORED = 0;
+
     private transient File source;
     private transient File target;
     private transient File dir;
@@ -59,6 +98,33 @@ public class JarBuilder {
     private boolean dirty;
     @Getter @Setter @NonNull
     private List<String> included = new ArrayList<String>();
+    @Getter @Setter
+    private List<String> built = new ArrayList<String>();
+    @Getter @Setter
+    private Map<String, ArchiveRecord> archives = new HashMap<String, ArchiveRecord>();
+    @Getter @Setter
+    private ArchiveRecord targetStamp;
+    @Getter
+    private int compressionLevel = KEEP_COMPRESSION;
+    @Getter @Setter
+    private int builtCompressionLevel = KEEP_COMPRESSION;
+    @Getter @Setter
+    private boolean layered;
+    @Getter @Setter
+    private Map<String, LayerRecord> layers = new HashMap<String, LayerRecord>();
+
+    /**
+     * Set the level to compress entries with.
+     *
+     * @param compressionLevel {@link #KEEP_COMPRESSION}, {@link #STORED},
+     *                         or a deflate level from 1 to 9
+     */
+    public void setCompressionLevel(int compressionLevel) {
+        if (compressionLevel < KEEP_COMPRESSION || compressionLevel > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException("Invalid compression level: " + compressionLevel);
+        }
+        this.compressionLevel = compressionLevel;
+    }
 
     @JsonIgnore
     public File getSource() {
@@ -100,91 +166,414 @@ public class JarBuilder {
         included.add(name);
     }
 
+    /**
+     * Get the directory where copies of signed .jars are kept in layered mode.
+     *
+     * @return the directory
+     */
+    @JsonIgnore
+    public File getLayersDir() {
+        String name = getTarget().getName();
+        return new File(getTarget().getParentFile(), FilenameUtils.getBaseName(name) + "-layers");
+    }
+
+    /**
+     * Get the archives to merge, in order of precedence.
+     *
+     * @return a map of archive names to files
+     */
+    private Map<String, File> getMergeOrder() {
+        Map<String, File> order = new LinkedHashMap<String, File>();
+
+        // Patch .jars in reverse order, then the base .jar
+        ListIterator<String> it = getIncluded().listIterator(getIncluded().size());
+        while (it.hasPrevious()) {
+            String name = it.previous();
+            order.put(name, new File(dir, name));
+        }
+
+        order.put(BASE_ARCHIVE, getSource());
+
+        return order;
+    }
+
+    /**
+     * Return whether the target .jar has to be rebuilt because the list of
+     * included .jars or any of the .jars have changed since it was built.
+     *
+     * @return true if a rebuild is needed
+     */
+    public boolean needsRebuild() {
+        if (isDirty() || !getTarget().exists() || targetStamp == null
+                || !targetStamp.matches(getTarget())
+                || !getIncluded().equals(getBuilt())
+                || compressionLevel != builtCompressionLevel) {
+            return true;
+        }
+
+        for (Map.Entry<String, File> entry : getMergeOrder().entrySet()) {
+            ArchiveRecord record = archives.get(entry.getKey());
+            if (entry.getValue().exists() && (record == null || !record.matches(entry.getValue()))) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
     /**
      * Rebuild the target JAR file to contain the list of included JAR files.
      *
      * @throws IOException on I/O error
      */
     public void rebuild() throws IOException {
-        Set<String> existing = new HashSet<String>();
+        Map<String, ArchiveRecord> records = new HashMap<String, ArchiveRecord>();
+        Map<String, List<String>> suppliers = new LinkedHashMap<String, List<String>>();
+        Map<String, String> winners = new HashMap<String, String>();
+        Map<String, RawZipFile> opened = new HashMap<String, RawZipFile>();
+        Set<String> failed = new HashSet<String>();
+        RawZipFile previous = null;
+        File tempFile = new File(getTarget().getParentFile(), getTarget().getName() + ".tmp");
 
         FileOutputStream fos = null;
         BufferedOutputStream bos = null;
-        ZipOutputStream zos = null;
+        RawZipWriter writer = null;
 
         log.log(Level.INFO,
                 "Rebuilding {0}", getTarget().getAbsolutePath());
 
         try {
-            fos = new FileOutputStream(getTarget());
-            bos = new BufferedOutputStream(fos);
-            zos = new ZipOutputStream(bos);
+            // Find out which archive supplies each entry
+            for (Map.Entry<String, File> entry : getMergeOrder().entrySet()) {
+                String name = entry.getKey();
+                File file = entry.getValue();
+                ArchiveRecord record = archives.get(name);
+
+                if (!file.exists()) {
+                    if (name.equals(BASE_ARCHIVE)) {
+                        throw new FileNotFoundException(file.getAbsolutePath());
+                    }
+                    log.log(Level.WARNING,
+                            "Can't merge in " + file.getAbsolutePath());
+                    continue;
+                }
 
-            // Merge in the patch .jars in reverse order
-            ListIterator<String> it = getIncluded().listIterator(getIncluded().size());
-            while (it.hasPrevious()) {
-                File file = new File(dir, it.previous());
-                if (file.exists()) {
+                if (record == null || !record.matches(file)) {
                     try {
-                        mergeInto(zos, file, existing);
+                        RawZipFile zipFile = new RawZipFile(file);
+                        opened.put(name, zipFile);
+                        record = ArchiveRecord.read(file, zipFile);
                     } catch (IOException e) {
+                        if (name.equals(BASE_ARCHIVE)) {
+                            throw e;
+                        }
                         log.log(Level.WARNING,
                                 "Failed to merge in " + file.getAbsolutePath(), e);
+                        // Don't try again until the file changes
+                        records.put(name, ArchiveRecord.stamp(file));
+                        continue;
+                    }
+                }
+
+                records.put(name, record);
+
+                for (String path : record.getEntries().keySet()) {
+                    if (matches(path)) {
+                        List<String> names = suppliers.get(path);
+                        if (names == null) {
+                            names = new ArrayList<String>();
+                            suppliers.put(path, names);
+                        }
+                        names.add(name);
+                    }
+                }
+            }
+
+            if (targetStamp != null && getTarget().exists() && targetStamp.matches(getTarget())
+                    && compressionLevel == builtCompressionLevel) {
+                try {
+                    previous = new RawZipFile(getTarget());
+                } catch (IOException e) {
+                    log.log(Level.WARNING, "Can't read the previous " +
+                            getTarget().getAbsolutePath() + ", so rebuilding all of it", e);
+                }
+            }
+
+            fos = new FileOutputStream(tempFile);
+            bos = new BufferedOutputStream(fos);
+            writer = new RawZipWriter(bos);
+
+            Map<String, EntryRecord> builtEntries = getBuiltEntries();
+            List<PlannedEntry> plan = new ArrayList<PlannedEntry>();
+            int reused = 0;
+
+            // Take each entry from the first archive that has an intact copy of it
+            for (Map.Entry<String, List<String>> entry : suppliers.entrySet()) {
+                String path = entry.getKey();
+
+                for (String name : entry.getValue()) {
+                    EntryRecord wanted = records.get(name).getEntries().get(path);
+                    PlannedEntry planned = null;
+
+                    if (previous != null && wanted.equals(builtEntries.get(path))) {
+                        planned = plan(path, previous, path, true);
+                    }
+
+                    if (planned == null) {
+                        RawZipFile from = open(name, opened, failed);
+                        if (from != null) {
+                            planned = plan(path, from, wanted.getName(), false);
+                        }
+                    }
+
+                    if (planned != null) {
+                        plan.add(planned);
+                        winners.put(path, name);
+                        if (planned.reused) {
+                            reused++;
+                        }
+                        break;
                     }
-                } else {
-                    log.log(Level.WARNING,
-                            "Can't merge in " + file.getAbsolutePath());
                 }
             }
 
-            // Now merge in the base .jar
-            mergeInto(zos, getSource(), existing);
+            for (String path : write(plan, writer)) {
+                winners.remove(path);
+            }
+            writer.close();
 
-            setDirty(false);
+            log.log(Level.INFO, "Copied {0} of {1} entries from the previous build",
+                    new Object[] { reused, winners.size() });
         } finally {
-            closeQuietly(zos);
+            closeQuietly(writer);
             closeQuietly(bos);
             closeQuietly(fos);
+            closeQuietly(previous);
+            for (RawZipFile zipFile : opened.values()) {
+                closeQuietly(zipFile);
+            }
+        }
+
+        getTarget().delete();
+        if (!tempFile.renameTo(getTarget())) {
+            tempFile.delete();
+            throw new IOException(String.format(
+                    "Failed to rename %s to %s", tempFile, getTarget()));
+        }
+
+        // Remember which archive each entry came from
+        for (Map.Entry<String, ArchiveRecord> entry : records.entrySet()) {
+            ArchiveRecord record = entry.getValue();
+            for (Map.Entry<String, EntryRecord> e : record.getEntries().entrySet()) {
+                e.getValue().setUsed(entry.getKey().equals(winners.get(e.getKey())));
+            }
         }
+
+        archives = records;
+        built = new ArrayList<String>(getIncluded());
+        builtCompressionLevel = compressionLevel;
+        targetStamp = ArchiveRecord.stamp(getTarget());
+        setDirty(false);
+
+        Persistence.commitAndForget(this);
     }
 
     /**
-     * Merge the given file into the ZIP output stream, taking care to not duplicate
-     * files that are in the given set.
+     * Get the records of the entries that were written to the previous target.
      *
-     * @param zos the zip output stream
-     * @param file the file
-     * @param existing a set of paths that already exist in the target ZIP
-     * @throws IOException thrown on I/O error
+     * @return a map of paths to records
      */
-    private static void mergeInto(ZipOutputStream zos, File file, Set<String> existing)
-            throws IOException {
-        log.log(Level.INFO,
-                "Merging in {0}", file.getAbsolutePath());
+    private Map<String, EntryRecord> getBuiltEntries() {
+        Map<String, EntryRecord> entries = new HashMap<String, EntryRecord>();
 
-        FileInputStream fis = null;
-        BufferedInputStream bis = null;
-        ZipInputStream zis = null;
-        ZipEntry entry;
+        for (ArchiveRecord record : archives.values()) {
+            for (Map.Entry<String, EntryRecord> entry : record.getEntries().entrySet()) {
+                if (entry.getValue().isUsed()) {
+                    entries.put(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+
+        return entries;
+    }
+
+    /**
+     * Open the archive with the given name, if it hasn't been opened yet.
+     *
+     * @param name the name of the archive
+     * @param opened the archives that have been opened
+     * @param failed the names of the archives that couldn't be opened
+     * @return the archive, or null if it is a patch that can't be opened
+     * @throws IOException if the base .jar can't be opened
+     */
+    private RawZipFile open(String name, Map<String, RawZipFile> opened,
+                            Set<String> failed) throws IOException {
+        RawZipFile zipFile = opened.get(name);
+
+        if (zipFile == null && !failed.contains(name)) {
+            File file = name.equals(BASE_ARCHIVE) ? getSource() : new File(dir, name);
+
+            try {
+                zipFile = new RawZipFile(file);
+                opened.put(name, zipFile);
+            } catch (IOException e) {
+                if (name.equals(BASE_ARCHIVE)) {
+                    throw e;
+                }
+                log.log(Level.WARNING, "Failed to merge in " + file.getAbsolutePath(), e);
+                failed.add(name);
+            }
+        }
+
+        return zipFile;
+    }
+
+    /**
+     * Plan to write an entry, if it can be read from the given archive.
+     *
+     * @param path the path to write the entry to
+     * @param from the archive
+     * @param fromPath the name of the entry in the archive
+     * @param reused true if the archive is the previous build
+     * @return the planned entry, or null if the entry is missing or corrupt
+     */
+    private PlannedEntry plan(String path, RawZipFile from, String fromPath, boolean reused) {
+        RawZipFile.Entry entry = from.getEntry(fromPath);
+
+        if (entry == null) {
+            return null;
+        }
+
+        PlannedEntry planned = new PlannedEntry(path, from, entry, reused);
 
         try {
-            fis = new FileInputStream(file);
-            bis = new BufferedInputStream(fis);
-            zis = new ZipInputStream(bis);
+            from.check(entry);
 
-            while ((entry = zis.getNextEntry()) != null) {
-                String path = normalize(entry.getName());
+            if (needsCompression(planned) && !RawZipFile.canReadData(entry)) {
+                throw new IOException("Unsupported compression method for " + fromPath);
+            }
+
+            return planned;
+        } catch (IOException e) {
+            log.log(Level.WARNING, "Skipping " + fromPath + " in " +
+                    from.getFile().getAbsolutePath(), e);
+            return null;
+        }
+    }
+
+    /**
+     * Return whether the given entry has to be recompressed to match the
+     * compression level.
+     *
+     * @param planned the entry
+     * @return true if it has to be recompressed
+     */
+    private boolean needsCompression(PlannedEntry planned) {
+        if (compressionLevel == KEEP_COMPRESSION) {
+            return false;
+        } else if (compressionLevel == STORED) {
+            return planned.entry.getMethod() != ZipEntry.STORED;
+        } else {
+            // Only entries from the previous build are known to be at this level
+            return !planned.reused || planned.entry.getMethod() != ZipEntry.DEFLATED;
+        }
+    }
+
+    /**
+     * Write the planned entries in order, compressing the entries that need
+     * it on other threads ahead of when they are written.
+     *
+     * <p>Entries that turn out to be corrupt when they are inflated are
+     * left out with a warning.</p>
+     *
+     * @param plan the entries to write
+     * @param writer the writer
+     * @return the paths of the entries that were left out
+     * @throws IOException on I/O error
+     */
+    private List<String> write(List<PlannedEntry> plan, RawZipWriter writer) throws IOException {
+        List<String> skipped = new ArrayList<String>();
+        int threads = Runtime.getRuntime().availableProcessors();
+        int window = threads * COMPRESS_AHEAD_PER_THREAD;
+        ExecutorService executor = null;
+        int next = 0;
+
+        try {
+            for (int i = 0; i < plan.size(); i++) {
+                // Keep the compressing threads busy with the entries to come
+                for (; next < plan.size() && next < i + window; next++) {
+                    final PlannedEntry planned = plan.get(next);
+
+                    if (needsCompression(planned)) {
+                        if (executor == null) {
+                            executor = Executors.newFixedThreadPool(threads);
+                        }
 
-                if (matches(path) && !existing.contains(path)) {
-                    existing.add(path);
-                    zos.putNextEntry(new ZipEntry(path));
-                    IOUtils.copy(zis, zos);
+                        final int level = compressionLevel;
+                        planned.compressed = executor.submit(new Callable<RawZipWriter.Compressed>() {
+                            @Override
+                            public RawZipWriter.Compressed call() throws IOException {
+                                return RawZipWriter.compress(planned.from.readData(planned.entry), level);
+                            }
+                        });
+                    }
+                }
+
+                PlannedEntry planned = plan.get(i);
+
+                if (planned.compressed != null) {
+                    RawZipWriter.Compressed compressed;
+
+                    try {
+                        compressed = getCompressed(planned.compressed);
+                    } catch (InterruptedIOException e) {
+                        throw e;
+                    } catch (IOException e) {
+                        log.log(Level.WARNING, "Skipping " + planned.entry.getName() + " in " +
+                                planned.from.getFile().getAbsolutePath(), e);
+                        skipped.add(planned.path);
+                        continue;
+                    } finally {
+                        planned.compressed = null;
+                    }
+
+                    writer.write(planned.path, planned.entry.getDosTime(), compressed);
+                } else {
+                    writer.copy(planned.path, planned.from, planned.entry);
                 }
             }
         } finally {
-            closeQuietly(zis);
-            closeQuietly(bis);
-            closeQuietly(fis);
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+        }
+
+        return skipped;
+    }
+
+    private static RawZipWriter.Compressed getCompressed(Future<RawZipWriter.Compressed> future)
+            throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while compressing");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else {
+                throw new IOException(cause);
+            }
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException ignored) {
+            }
         }
     }
 
@@ -222,11 +611,247 @@ public class JarBuilder {
             return getSource();
         }
 
-        if (isDirty() || !getTarget().exists()) {
+        if (needsRebuild()) {
             rebuild();
         }
 
         return getTarget();
     }
 
+    /**
+     * Get the list of .jars to put on the class path, in order.
+     *
+     * <p>Unless in layered mode, this is the .jar returned by
+     * {@link #getExecutedPath()}.</p>
+     *
+     * @return the list of .jars
+     * @throws IOException on I/O error
+     */
+    public List<File> getClassPath() throws IOException {
+        List<File> classPath = new ArrayList<File>();
+
+        if (!isLayered() || getIncluded().size() == 0) {
+            classPath.add(getExecutedPath());
+            return classPath;
+        }
+
+        Map<String, LayerRecord> records = new HashMap<String, LayerRecord>();
+        boolean changed = false;
+
+        for (Map.Entry<String, File> entry : getMergeOrder().entrySet()) {
+            String name = entry.getKey();
+            File file = entry.getValue();
+
+            if (!file.exists()) {
+                if (name.equals(BASE_ARCHIVE)) {
+                    throw new FileNotFoundException(file.getAbsolutePath());
+                }
+                log.log(Level.WARNING,
+                        "Can't put " + file.getAbsolutePath() + " on the class path");
+                continue;
+            }
+
+            File layerFile = getLayerFile(name);
+            LayerRecord record = layers.get(name);
+
+            if (record == null || !record.matches(file)
+                    || (record.isSigned() && !layerFile.exists())) {
+                record = createLayer(file, layerFile);
+                changed = true;
+            }
+
+            records.put(name, record);
+            classPath.add(record.isSigned() ? layerFile : file);
+        }
+
+        if (changed || !records.keySet().equals(layers.keySet())) {
+            layers = records;
+            Persistence.commitAndForget(this);
+        }
+
+        return classPath;
+    }
+
+    /**
+     * Get the path to keep the unsigned copy of the given archive at.
+     *
+     * <p>The base .jar and the patches are kept in separate directories,
+     * so that no patch can have the same path as the base .jar.</p>
+     *
+     * @param name the name of the archive
+     * @return the path
+     */
+    private File getLayerFile(String name) {
+        if (name.equals(BASE_ARCHIVE)) {
+            return new File(getLayersDir(), "base/" + getSource().getName());
+        } else {
+            return new File(getLayersDir(), "patches/" + name);
+        }
+    }
+
+    /**
+     * Check whether the given .jar is signed, and if it is, write a copy of
+     * it without the signature files.
+     *
+     * @param file the .jar
+     * @param layerFile the path to write the copy to
+     * @return a record of the .jar
+     * @throws IOException on I/O error
+     */
+    private static LayerRecord createLayer(File file, File layerFile) throws IOException {
+        LayerRecord record = new LayerRecord();
+        record.setSize(file.length());
+        record.setLastModified(file.lastModified());
+
+        RawZipFile zipFile = new RawZipFile(file);
+        RawZipWriter writer = null;
+        File tempFile = new File(layerFile.getParentFile(), layerFile.getName() + ".tmp");
+
+        try {
+            for (RawZipFile.Entry entry : zipFile.getEntries()) {
+                if (isSignature(entry.getName())) {
+                    record.setSigned(true);
+                    break;
+                }
+            }
+
+            if (!record.isSigned()) {
+                layerFile.delete();
+                return record;
+            }
+
+            log.log(Level.INFO, "Removing signatures from a copy of {0}", file.getAbsolutePath());
+
+            layerFile.getParentFile().mkdirs();
+            writer = new RawZipWriter(new BufferedOutputStream(new FileOutputStream(tempFile)));
+
+            for (RawZipFile.Entry entry : zipFile.getEntries()) {
+                if (!isSignature(entry.getName())) {
+                    writer.copy(entry.getName(), zipFile, entry);
+                }
+            }
+
+            writer.close();
+        } finally {
+            closeQuietly(writer);
+            closeQuietly(zipFile);
+        }
+
+        layerFile.delete();
+        if (!tempFile.renameTo(layerFile)) {
+            tempFile.delete();
+            throw new IOException(String.format(
+                    "Failed to rename %s to %s", tempFile, layerFile));
+        }
+
+        return record;
+    }
+
+    /**
+     * Returns whether the path is a file used to sign a .jar.
+     *
+     * @param path the path
+     * @return true if it's a signature file
+     */
+    private static boolean isSignature(String path) {
+        String upper = path.toUpperCase();
+        return upper.startsWith("META-INF/") && upper.indexOf('/', 9) == -1 &&
+                (upper.endsWith(".SF") || upper.endsWith(".RSA")
+                        || upper.endsWith(".DSA") || upper.endsWith(".EC"));
+    }
+
+    /**
+     * The size and modification time of a .jar that is put on the class path
+     * in layered mode, and whether it is signed.
+     */
+    @Data
+    public static class LayerRecord {
+        private long size;
+        private long lastModified;
+        private boolean signed;
+
+        public boolean matches(File file) {
+            return file.length() == size && file.lastModified() == lastModified;
+        }
+    }
+
+    /**
+     * The size and modification time of an archive, and the entries in it.
+     */
+    @Data
+    public static class ArchiveRecord {
+        private long size;
+        private long lastModified;
+        private Map<String, EntryRecord> entries = new HashMap<String, EntryRecord>();
+
+        /**
+         * Return whether the given file still has the recorded size and
+         * modification time.
+         *
+         * @param file the file
+         * @return true if it matches
+         */
+        public boolean matches(File file) {
+            return file.length() == size && file.lastModified() == lastModified;
+        }
+
+        private static ArchiveRecord stamp(File file) {
+            ArchiveRecord record = new ArchiveRecord();
+            record.setSize(file.length());
+            record.setLastModified(file.lastModified());
+            return record;
+        }
+
+        private static ArchiveRecord read(File file, RawZipFile zipFile) {
+            ArchiveRecord record = stamp(file);
+
+            for (RawZipFile.Entry entry : zipFile.getEntries()) {
+                if (entry.isDirectory()) {
+                    continue;
+                }
+
+                String path = normalize(entry.getName());
+                if (path != null && !record.getEntries().containsKey(path)) {
+                    EntryRecord entryRecord = new EntryRecord();
+                    entryRecord.setName(entry.getName());
+                    entryRecord.setCrc(entry.getCrc());
+                    entryRecord.setSize(entry.getSize());
+                    record.getEntries().put(path, entryRecord);
+                }
+            }
+
+            return record;
+        }
+    }
+
+    /**
+     * An entry to be written to the target, and where it comes from.
+     */
+    private static class PlannedEntry {
+        private final String path;
+        private final RawZipFile from;
+        private final RawZipFile.Entry entry;
+        private final boolean reused;
+        private Future<RawZipWriter.Compressed> compressed;
+
+        private PlannedEntry(String path, RawZipFile from, RawZipFile.Entry entry, boolean reused) {
+            this.path = path;
+            this.from = from;
+            this.entry = entry;
+            this.reused = reused;
+        }
+    }
+
+    /**
+     * The name, CRC and size of an entry in an archive.
+     */
+    @Data
+    @EqualsAndHashCode(exclude = "used")
+    public static class EntryRecord {
+        private String name;
+        private long crc;
+        private long size;
+        private boolean used;
+    }
+
 }
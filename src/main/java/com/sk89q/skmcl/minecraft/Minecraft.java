@@ -25,7 +25,7 @@ import com.sk89q.skmcl.application.Version;
 import com.sk89q.skmcl.minecraft.model.ReleaseList;
 import com.sk89q.skmcl.profile.Profile;
 import com.sk89q.skmcl.util.Environment;
-import com.sk89q.skmcl.util.HttpRequest;
+import com.sk89q.skmcl.util.HttpCache;
 
 import java.io.File;
 import java.io.FileFilter;
@@ -33,8 +33,6 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
-import static com.sk89q.skmcl.util.HttpRequest.url;
-
 /**
  * Installs, updates, and launches Minecraft.
  */
@@ -45,7 +43,6 @@ public class Minecraft implements Application {
 
     private Version version;
     private transient Profile profile;
-    private transient ReleaseList releaseList;
 
     /**
      * Get a copy of the profile in use.
@@ -111,7 +108,7 @@ public class Minecraft implements Application {
 
     @Override
     public void forgetVersions() {
-        releaseList = null;
+        ReleaseListCache.getInstance().invalidate();
     }
 
     @Override
@@ -125,24 +122,29 @@ public class Minecraft implements Application {
                 current.resolve(this, offline), environment);
     }
 
+    /**
+     * Get the cache for files that are downloaded from the web, which is
+     * shared by every profile with the same shared directory.
+     *
+     * @param profile the profile
+     * @return the cache
+     */
+    static HttpCache getHttpCache(Profile profile) {
+        return new HttpCache(new File(profile.getSharedDir(), "cache/http"));
+    }
+
     /**
      * Get a copy of the release list, fetching it from the web if it's not cached.
      *
+     * <p>The list is shared by every profile and is only checked for changes
+     * once it has been cached for a while.</p>
+     *
      * @return the release list
      * @throws IOException on I/O error
+     * @see ReleaseListCache
      */
     private ReleaseList getReleaseList() throws IOException, InterruptedException {
-        if (releaseList == null) {
-            ReleaseList list = HttpRequest
-                    .get(url(VERSIONS_LIST_URL))
-                    .execute()
-                    .returnContent()
-                    .asJson(ReleaseList.class);
-            this.releaseList = list;
-            return list;
-        }
-
-        return releaseList;
+        return ReleaseListCache.getInstance().get(getHttpCache(getProfile()));
     }
 
     /**
@@ -22,8 +22,8 @@ import com.sk89q.skmcl.application.Instance;
 import com.sk89q.skmcl.application.UpdateRequiredException;
 import com.sk89q.skmcl.application.Version;
 import com.sk89q.skmcl.concurrent.AbstractWorker;
-import com.sk89q.skmcl.install.FileResource;
-import com.sk89q.skmcl.install.ZipExtract;
+import com.sk89q.skmcl.install.NativesCache;
+import com.sk89q.skmcl.install.ObjectStore;
 import com.sk89q.skmcl.launch.JavaProcessBuilder;
 import com.sk89q.skmcl.launch.LaunchContext;
 import com.sk89q.skmcl.launch.LaunchedProcess;
@@ -33,16 +33,20 @@ import com.sk89q.skmcl.profile.Profile;
 import com.sk89q.skmcl.session.Identity;
 import com.sk89q.skmcl.session.Session;
 import com.sk89q.skmcl.util.Environment;
+import com.sk89q.skmcl.util.FileHasher;
+import com.sk89q.skmcl.util.HttpCache;
 import com.sk89q.skmcl.util.Persistence;
 import com.sk89q.skmcl.util.Platform;
+import lombok.Data;
 import lombok.Getter;
 import lombok.NonNull;
 import lombok.ToString;
-import org.apache.commons.io.FileUtils;
 import org.codehaus.jackson.map.ObjectMapper;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 import static com.sk89q.skmcl.minecraft.model.Library.Extract;
 
@@ -61,6 +65,8 @@ public class MinecraftInstall implements Instance {
     @Getter
     private final Environment environment;
     @Getter
+    private final ObjectStore objectStore;
+    @Getter
     private JarBuilder jarPatcher;
 
     /**
@@ -77,6 +83,7 @@ public class MinecraftInstall implements Instance {
         this.version = version;
         this.environment = environment;
         versionPath = String.format("versions/%1$s/%1$s", version.getId());
+        objectStore = new ObjectStore(new File(profile.getSharedDir(), "objects"));
 
         // JAR patcher configuration
         File file = new File(getProfile().getContentDir(), versionPath + "-patches.json");
@@ -98,12 +105,44 @@ public class MinecraftInstall implements Instance {
     }
 
     /**
-     * Get the path to the .jar file for this version.
+     * Get the path to the file that records a verified installation.
      *
      * @return the path
      */
+    public File getVerifiedStampPath() {
+        return new File(getProfile().getContentDir(), versionPath + "-verified.json");
+    }
+
+    /**
+     * Get the key that the .jar file for this version is stored under in
+     * the shared object store.
+     *
+     * @return the key
+     */
+    public String getJarKey() {
+        return versionPath + ".jar";
+    }
+
+    /**
+     * Get the path to the .jar file for this version.
+     *
+     * <p>The .jar is kept in the shared object store, but a copy installed
+     * into the profile by an older version of the launcher will be used
+     * if it exists.</p>
+     *
+     * @return the path, which may not exist if the .jar is not installed
+     */
     public File getJarPath() {
-        return new File(getProfile().getContentDir(), versionPath + ".jar");
+        File file = new File(getProfile().getContentDir(), versionPath + ".jar");
+
+        if (!file.exists()) {
+            File stored = getObjectStore().resolve(getJarKey());
+            if (stored != null) {
+                return stored;
+            }
+        }
+
+        return file;
     }
 
     /**
@@ -115,6 +154,16 @@ public class MinecraftInstall implements Instance {
         return new File(getProfile().getSharedDir(), "assets");
     }
 
+    /**
+     * Get the path to the index of fingerprints of files in the shared
+     * assets directory.
+     *
+     * @return the path
+     */
+    public File getAssetsIndexPath() {
+        return new File(getProfile().getSharedDir(), "assets.json");
+    }
+
     /**
      * Get the path to shared libraries directory.
      *
@@ -125,15 +174,76 @@ public class MinecraftInstall implements Instance {
     }
 
     /**
-     * Get the path to a new temporary directory to store extracted libraries.
+     * Get the cache for files that are downloaded from the web.
      *
-     * <p>The returned directory can be deleted at any point in time.</p>
+     * @return the cache
+     */
+    public HttpCache getHttpCache() {
+        return Minecraft.getHttpCache(getProfile());
+    }
+
+    /**
+     * Get the cache of extracted native libraries.
      *
-     * @return the path
+     * @return the cache
+     */
+    protected NativesCache getNativesCache() {
+        return new NativesCache(new File(getProfile().getSharedDir(), "natives"));
+    }
+
+    @Override
+    public boolean isVerified() {
+        File stampPath = getVerifiedStampPath();
+        File manifestPath = getManifestPath();
+
+        if (!stampPath.exists() || !manifestPath.exists() || !getJarPath().exists()) {
+            return false;
+        }
+
+        VerifiedStamp stamp = Persistence.load(stampPath, VerifiedStamp.class, true);
+
+        if (stamp == null || !getVersion().getId().equals(stamp.getVersionId())) {
+            return false;
+        }
+
+        try {
+            if (!FileHasher.hash(manifestPath, FileHasher.SHA1).equals(stamp.getManifestHash())) {
+                return false;
+            }
+        } catch (IOException e) {
+            return false;
+        }
+
+        for (String path : stamp.getLibraries()) {
+            if (!new File(getLibrariesDir(), path).exists()) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Record that the version's manifest, .jar and libraries have been
+     * installed, so that the next launch can skip checking for updates.
+     *
+     * @throws IOException on I/O error
      */
-    protected File createExtractDir() {
-        String id = "-natives-" + System.currentTimeMillis();
-        return new File(getProfile().getContentDir(), versionPath + id);
+    protected void writeVerifiedStamp() throws IOException {
+        File manifestPath = getManifestPath();
+        ReleaseManifest manifest = new ObjectMapper().readValue(manifestPath, ReleaseManifest.class);
+        VerifiedStamp stamp = new VerifiedStamp();
+
+        stamp.setVersionId(getVersion().getId());
+        stamp.setManifestHash(FileHasher.hash(manifestPath, FileHasher.SHA1));
+
+        for (Library library : manifest.getLibraries()) {
+            if (library.matches(getEnvironment())) {
+                stamp.getLibraries().add(library.getPath(getEnvironment()));
+            }
+        }
+
+        Persistence.write(getVerifiedStampPath(), stamp);
     }
 
     @Override
@@ -144,29 +254,32 @@ public class MinecraftInstall implements Instance {
     @Override
     public LaunchedProcess launch(final LaunchContext context)
             throws IOException, UpdateRequiredException {
-        if (!getJarPath().exists()) {
+        File jarPath = getJarPath();
+
+        if (!jarPath.exists()) {
             throw new UpdateRequiredException("Not yet installed");
         }
 
+        // The .jar may have been stored since this instance was created
+        JarBuilder jarPatcher = getJarPatcher();
+        jarPatcher.setPaths(jarPath, jarPatcher.getTarget(), jarPatcher.getDir());
+
         Identity identity = context.getIdentity();
         ObjectMapper mapper = new ObjectMapper();
-        final File extractDir = createExtractDir();
         JavaProcessBuilder builder = new JavaProcessBuilder();
         ReleaseManifest manifest = mapper.readValue(
                 getManifestPath(), ReleaseManifest.class);
         String clientToken = identity.getClientToken();
 
         // Add libraries to classpath or extract the libraries as necessary
+        List<NativesCache.Archive> natives = new ArrayList<NativesCache.Archive>();
         for (Library library : manifest.getLibraries()) {
             File path = new File(getLibrariesDir(), library.getPath(context.getEnvironment()));
 
             if (path.exists()) {
                 Extract extract = library.getExtract();
                 if (extract != null) {
-                    ZipExtract zipExtract = new ZipExtract(
-                            new FileResource(path), extractDir);
-                    zipExtract.setExclude(extract.getExclude());
-                    zipExtract.run();
+                    natives.add(new NativesCache.Archive(path, extract.getExclude()));
                 } else {
                     builder.classPath(path);
                 }
@@ -193,21 +306,47 @@ public class MinecraftInstall implements Instance {
             builder.getFlags().add("-Xdock:name=Minecraft");
         }
 
-        builder.getFlags().add("-Djava.library.path=" + extractDir.getAbsoluteFile());
-        builder.classPath(getJarPatcher().getExecutedPath());
+        for (File file : jarPatcher.getClassPath()) {
+            builder.classPath(file);
+        }
         builder.setMainClass(manifest.getMainClass());
 
-        ProcessBuilder processBuilder = new ProcessBuilder(builder.buildCommand());
-        processBuilder.directory(getProfile().getContentDir());
-        Process process = processBuilder.start();
+        // Hold the natives for as little as possible before the process owns them
+        final NativesCache.Lease nativesLease = getNativesCache().acquire(natives);
+        boolean successful = false;
+        Process process;
+
+        try {
+            File extractDir = nativesLease.getDir();
+            builder.getFlags().add("-Djava.library.path=" + extractDir.getAbsoluteFile());
+
+            ProcessBuilder processBuilder = new ProcessBuilder(builder.buildCommand());
+            processBuilder.directory(getProfile().getContentDir());
+            process = processBuilder.start();
+            successful = true;
+        } finally {
+            if (!successful) {
+                nativesLease.close();
+            }
+        }
 
         // Return the process
         return new LaunchedProcess(process) {
             @Override
             public void close() throws IOException {
-                FileUtils.deleteDirectory(extractDir);
+                nativesLease.close();
             }
         };
     }
 
+    /**
+     * The version, manifest hash, and libraries of a verified installation.
+     */
+    @Data
+    public static class VerifiedStamp {
+        private String versionId;
+        private String manifestHash;
+        private List<String> libraries = new ArrayList<String>();
+    }
+
 }
@@ -20,32 +20,39 @@ package com.sk89q.skmcl.minecraft;
 
 import com.sk89q.skmcl.application.Version;
 import com.sk89q.skmcl.concurrent.AbstractWorker;
+import com.sk89q.skmcl.concurrent.BlockingExecutors;
+import com.sk89q.skmcl.concurrent.TaskScope;
 import com.sk89q.skmcl.concurrent.WorkUnit;
+import com.sk89q.skmcl.install.FingerprintIndex;
 import com.sk89q.skmcl.install.HttpResource;
 import com.sk89q.skmcl.install.InstallerRuntime;
+import com.sk89q.skmcl.install.Priority;
 import com.sk89q.skmcl.minecraft.model.AWSBucket;
+import com.sk89q.skmcl.minecraft.model.AWSBucketParser;
 import com.sk89q.skmcl.minecraft.model.Library;
 import com.sk89q.skmcl.minecraft.model.ReleaseManifest;
 import com.sk89q.skmcl.util.Environment;
+import com.sk89q.skmcl.util.FileHasher;
 import com.sk89q.skmcl.util.HttpRequest;
 import com.sk89q.skmcl.util.LauncherUtils;
-import org.apache.commons.codec.digest.DigestUtils;
+import com.sk89q.skmcl.util.Persistence;
+import org.apache.commons.io.FileUtils;
+import org.codehaus.jackson.map.ObjectMapper;
 
+import java.io.Closeable;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.net.URL;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import static com.sk89q.skmcl.util.HttpRequest.Form.form;
 import static com.sk89q.skmcl.util.HttpRequest.url;
-import static com.sk89q.skmcl.util.LauncherUtils.checkInterrupted;
 import static com.sk89q.skmcl.util.LauncherUtils.hasSystemProperty;
 import static com.sk89q.skmcl.util.SharedLocale._;
-import static org.apache.commons.io.IOUtils.closeQuietly;
 
 /**
  * Updates an installation of Minecraft.
@@ -57,11 +64,15 @@ class MinecraftUpdater extends AbstractWorker<MinecraftInstall> {
     private static final String ASSETS_URL =
             "https://s3.amazonaws.com/MinecraftResources/";
 
+    private static final AWSBucket.Item END_OF_LISTING = new AWSBucket.Item();
+    private static final int HASH_BATCH_SIZE = 256;
+
     private static final Logger logger = LauncherUtils.getLogger(MinecraftUpdater.class);
-    private final ExecutorService executor = Executors.newFixedThreadPool(6);
+    private final ExecutorService executor = BlockingExecutors.newExecutor("Minecraft download");
     private final MinecraftInstall instance;
     private final Environment environment;
     private final InstallerRuntime installer;
+    private AbstractWorker<?> backgroundWorker;
 
     /**
      * Create a new instance.
@@ -76,6 +87,8 @@ class MinecraftUpdater extends AbstractWorker<MinecraftInstall> {
 
         installer = new InstallerRuntime(executor, environment);
         installer.setTemporaryDir(temporaryDir);
+
+        getScope().addExecutor(executor);
     }
 
     /**
@@ -114,29 +127,83 @@ class MinecraftUpdater extends AbstractWorker<MinecraftInstall> {
         return url(ASSETS_URL);
     }
 
+    /**
+     * Get a worker that lists, checks and installs the assets, which are not
+     * needed to launch the game.
+     *
+     * <p>The worker becomes available once this updater has returned.</p>
+     *
+     * @return the worker, or null if there is nothing left to install
+     */
+    @Override
+    public AbstractWorker<?> getBackgroundWorker() {
+        return backgroundWorker;
+    }
+
     @Override
     public MinecraftInstall call() throws Exception {
+        boolean shutdown = true;
+
         try {
             WorkUnit step1 = split(0.02),
-                    step2 = split(0.02),
-                    step3 = split(0.96);
+                    step2 = split(0.98);
 
-            if (!hasSystemProperty(MinecraftUpdater.class, "skipAssets")) {
-                installAssets(step1);
-                checkInterrupted();
-            }
+            // Whatever happens, the install isn't verified until we finish
+            instance.getVerifiedStampPath().delete();
 
-            installGame(step2);
+            installGame(step1);
             checkInterrupted();
 
             logger.log(Level.INFO, "Install tasks enumerated; now installing...");
 
-            installer.addObserver(step3);
-            installer.call();
+            installer.addObserver(step2);
+            callChild(installer);
+
+            // The assets aren't needed to launch, so they are only listed
+            // and checked in the background
+            if (!hasSystemProperty(MinecraftUpdater.class, "skipAssets")) {
+                backgroundWorker = new AbstractWorker<MinecraftInstall>() {
+                    @Override
+                    public MinecraftInstall call() throws Exception {
+                        setLocalizedTitle(_("minecraftUpdate.backgroundTitle"));
+
+                        try {
+                            WorkUnit step1 = split(0.1),
+                                    step2 = split(0.9);
+
+                            installAssets(step1, getScope());
+                            checkInterrupted();
+
+                            AbstractWorker<InstallerRuntime> worker = installer.getBackgroundWorker();
+                            if (worker != null) {
+                                worker.addObserver(step2);
+                                callChild(worker);
+                            }
+
+                            // Only now is everything, including the assets, installed
+                            instance.writeVerifiedStamp();
+                            return instance;
+                        } finally {
+                            executor.shutdownNow();
+                        }
+                    }
+
+                    @Override
+                    public boolean shouldConfirmInterrupt() {
+                        return false;
+                    }
+                };
+                backgroundWorker.getScope().addExecutor(executor);
+                shutdown = false;
+            } else {
+                instance.writeVerifiedStamp();
+            }
 
             return instance;
         } finally {
-            executor.shutdownNow();
+            if (shutdown) {
+                executor.shutdownNow();
+            }
         }
     }
 
@@ -151,23 +218,19 @@ class MinecraftUpdater extends AbstractWorker<MinecraftInstall> {
         logger.log(Level.INFO, "Checking for game updates...");
         workUnit.push(0, _("minecraftUpdate.checkingGameUpdates"));
 
-        File contentDir = instance.getProfile().getContentDir();
         File librariesDir = instance.getLibrariesDir();
         File jarPath = instance.getJarPath();
         File manifestPath = instance.getManifestPath();
 
         // Obtain the release manifest, save it, and parse it
-        ReleaseManifest manifest = HttpRequest
-                .get(getManifestUrl())
-                .execute()
-                .expectResponseCode(200)
-                .returnContent()
-                .saveContent(manifestPath)
-                .asJson(ReleaseManifest.class);
-
-        // If the JAR does not exist, install it
+        File cachedManifest = instance.getHttpCache().get(getManifestUrl());
+        ReleaseManifest manifest = new ObjectMapper().readValue(cachedManifest, ReleaseManifest.class);
+        FileUtils.copyFile(cachedManifest, manifestPath);
+
+        // If the JAR does not exist, install it into the shared object store
         if (!jarPath.exists()) {
-            installer.copyTo(new HttpResource(manifest.getJarUrl()), jarPath);
+            installer.copyToStore(new HttpResource(manifest.getJarUrl()),
+                    instance.getObjectStore(), instance.getJarKey());
         }
 
         // Install all the missing libraries
@@ -188,31 +251,40 @@ class MinecraftUpdater extends AbstractWorker<MinecraftInstall> {
     /**
      * Add shared Minecraft assets to the installer.
      *
+     * <p>The bucket listing is read on another thread, which requests the next
+     * page as soon as the current one has been read, while assets that have
+     * already been listed are checked on this thread. Files that have to be
+     * hashed are hashed in parallel and checked in batches.</p>
+     *
      * @param workUnit split for progress tacking
+     * @param scope the scope to cancel the listing with
      * @throws IOException on I/O error
      * @throws InterruptedException on interruption
      */
-    protected void installAssets(WorkUnit workUnit) throws IOException, InterruptedException {
+    protected void installAssets(WorkUnit workUnit, TaskScope scope)
+            throws IOException, InterruptedException {
         logger.log(Level.INFO, "Checking for asset downloads...");
 
         File assetsDir = instance.getAssetsDir();
-        String marker = "";
+        File indexPath = instance.getAssetsIndexPath();
+        FingerprintIndex index = Persistence.load(indexPath, FingerprintIndex.class);
+        BlockingQueue<AWSBucket.Item> queue = new LinkedBlockingQueue<AWSBucket.Item>();
+        ExecutorService listingExecutor = scope.addExecutor(
+                Executors.newSingleThreadExecutor());
+        FileHasher hasher = new FileHasher();
+        List<PendingAsset> hashing = new ArrayList<PendingAsset>();
 
-        while (marker != null) {
-            URL bucketUrl = getAssetsUrl(marker);
-            workUnit.push(0, _("minecraftUpdate.checkingAssets", bucketUrl.toString()));
-            logger.log(Level.INFO, "Enumerating assets from {0}...", bucketUrl);
-            checkInterrupted();
+        try {
+            Future<?> listing = listingExecutor.submit(new AssetListing(workUnit, scope, queue));
 
-            // Obtain the assets manifest
-            AWSBucket bucket = HttpRequest
-                    .get(bucketUrl)
-                    .execute()
-                    .returnContent()
-                    .asXml(AWSBucket.class);
+            // Install all the missing assets as they are listed
+            while (true) {
+                AWSBucket.Item item = queue.take();
+
+                if (item == END_OF_LISTING) {
+                    break;
+                }
 
-            // Install all the missing assets
-            for (AWSBucket.Item item : bucket.getContents()) {
                 String key = item.getKey();
                 String hash = item.getEtag();
 
@@ -220,40 +292,186 @@ class MinecraftUpdater extends AbstractWorker<MinecraftInstall> {
                     continue; // skip directories
                 }
 
-                URL url = item.getUrl(getAssetsUrl());
                 File file = new File(assetsDir, key);
 
-                if (!file.exists() || !getFileETag(file).equals(hash)) {
-                    logger.log(Level.INFO, "Need to get {0}", key);
-                    String id = hash + file.toString();
-                    installer.copyTo(new HttpResource(url).withId(id), file);
+                if (!file.exists()) {
+                    installAsset(index, item, file);
+                } else {
+                    String etag = index.get(key, file);
+                    if (etag != null) {
+                        if (!etag.equals(hash)) {
+                            installAsset(index, item, file);
+                        }
+                    } else {
+                        hashing.add(new PendingAsset(item, file,
+                                hasher.submit(file, FileHasher.MD5)));
+                        if (hashing.size() >= HASH_BATCH_SIZE) {
+                            checkHashed(index, hashing);
+                        }
+                    }
+                }
+            }
+
+            checkHashed(index, hashing);
+
+            try {
+                listing.get();
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                } else if (cause instanceof InterruptedException) {
+                    throw (InterruptedException) cause;
+                } else {
+                    throw new IOException(cause);
                 }
+            }
+        } finally {
+            listingExecutor.shutdownNow();
+            scope.remove(listingExecutor);
+            hasher.shutdown();
+        }
+
+        installer.write(index, indexPath, Priority.BACKGROUND);
+    }
+
+    /**
+     * Queue the download of an asset.
+     *
+     * @param index the fingerprint index
+     * @param item the asset
+     * @param file the path to install the asset to
+     */
+    private void installAsset(FingerprintIndex index, AWSBucket.Item item, File file) {
+        String key = item.getKey();
+        String hash = item.getEtag();
+        URL url = item.getUrl(getAssetsUrl());
+
+        logger.log(Level.INFO, "Need to get {0}", key);
+        String id = hash + file.toString();
+        installer.copyTo(new HttpResource(url).withId(id).withSize(item.getSize()),
+                file, Priority.BACKGROUND);
+        index.expect(key, file, hash);
+    }
 
-                marker = item.getKey();
+    /**
+     * Wait for the given assets to be hashed, record their hashes, and queue
+     * the download of the ones that have changed.
+     *
+     * @param index the fingerprint index
+     * @param hashing the list of assets being hashed, which will be cleared
+     * @throws InterruptedException on interruption
+     */
+    private void checkHashed(FingerprintIndex index, List<PendingAsset> hashing)
+            throws InterruptedException {
+        for (PendingAsset pending : hashing) {
+            String etag;
+
+            try {
+                etag = "\"" + pending.hash.get() + "\"";
+                index.put(pending.item.getKey(), pending.file, etag);
+            } catch (ExecutionException e) {
+                logger.log(Level.WARNING, "Failed to hash " + pending.file.getAbsolutePath(), e.getCause());
+                etag = "";
             }
 
-            // If the last bucket list is not truncated, then we're done
-            if (!bucket.isTruncated()) {
-                marker = null;
+            if (!etag.equals(pending.item.getEtag())) {
+                installAsset(index, pending.item, pending.file);
             }
         }
+
+        hashing.clear();
     }
 
     /**
-     * Generate the Etag hash string that is returned by the assets location.
+     * An asset that exists but is still being hashed.
+     */
+    private static class PendingAsset {
+        private final AWSBucket.Item item;
+        private final File file;
+        private final Future<String> hash;
+
+        private PendingAsset(AWSBucket.Item item, File file, Future<String> hash) {
+            this.item = item;
+            this.file = file;
+            this.hash = hash;
+        }
+    }
+
+    /**
+     * Reads pages of the assets listing and puts each item in a queue.
      *
-     * @param file the file
-     * @return the etag hash string
+     * <p>{@link #END_OF_LISTING} is put in the queue once there are no more
+     * items, even if listing has failed.</p>
      */
-    protected String getFileETag(File file) {
-        FileInputStream is = null;
-        try {
-            is = new FileInputStream(file);
-            return "\"" + DigestUtils.md5Hex(is) + "\"";
-        } catch (IOException e) {
-            return "";
-        } finally {
-            closeQuietly(is);
+    private class AssetListing implements Callable<Object> {
+        private final WorkUnit workUnit;
+        private final TaskScope scope;
+        private final BlockingQueue<AWSBucket.Item> queue;
+
+        private AssetListing(WorkUnit workUnit, TaskScope scope, BlockingQueue<AWSBucket.Item> queue) {
+            this.workUnit = workUnit;
+            this.scope = scope;
+            this.queue = queue;
+        }
+
+        @Override
+        public Object call() throws IOException, InterruptedException {
+            try {
+                AWSBucketParser parser = new AWSBucketParser(new AWSBucketParser.Handler() {
+                    @Override
+                    public void handle(AWSBucket.Item item) throws InterruptedException {
+                        queue.put(item);
+                    }
+                });
+
+                String marker = "";
+
+                while (marker != null) {
+                    URL bucketUrl = getAssetsUrl(marker);
+                    workUnit.push(0, _("minecraftUpdate.checkingAssets", bucketUrl.toString()));
+                    logger.log(Level.INFO, "Enumerating assets from {0}...", bucketUrl);
+                    checkInterrupted();
+
+                    final HttpRequest request = HttpRequest.get(bucketUrl);
+                    boolean successful = false;
+
+                    // Cancelling disconnects the request, which may be blocked on a read
+                    Closeable connection = scope.addCloseable(new Closeable() {
+                        @Override
+                        public void close() {
+                            request.abort();
+                        }
+                    });
+
+                    try {
+                        parser.parse(request
+                                .execute()
+                                .expectResponseCode(200)
+                                .getInputStream());
+                        successful = true;
+                    } finally {
+                        scope.remove(connection);
+
+                        if (successful) {
+                            request.close();
+                        } else {
+                            request.abort();
+                        }
+                    }
+
+                    // If the last bucket list is not truncated, then we're done
+                    if (parser.isTruncated() && parser.getLastKey() != null) {
+                        marker = parser.getLastKey();
+                    } else {
+                        marker = null;
+                    }
+                }
+
+                return null;
+            } finally {
+                queue.offer(END_OF_LISTING);
+            }
         }
     }
 
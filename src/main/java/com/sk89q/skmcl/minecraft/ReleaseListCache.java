@@ -0,0 +1,168 @@
+/*
+ * SK's Minecraft Launcher
+ * Copyright (C) 2010, 2011 Albert Pham <http://www.sk89q.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.sk89q.skmcl.minecraft;
+
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.SettableFuture;
+import com.sk89q.skmcl.minecraft.model.ReleaseList;
+import com.sk89q.skmcl.util.HttpCache;
+import lombok.NonNull;
+import org.codehaus.jackson.map.ObjectMapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static com.sk89q.skmcl.util.HttpRequest.url;
+
+/**
+ * Keeps one parsed copy of the release list for the whole launcher, so that
+ * every profile shares it.
+ *
+ * <p>The list is trusted for {@link #MAX_AGE}, both in memory and on disk
+ * (through the {@link HttpCache}), after which it is checked for changes
+ * again. If several threads need the list at once, only one of them fetches
+ * it and the others wait for the result.</p>
+ */
+class ReleaseListCache {
+
+    static final long MAX_AGE = TimeUnit.MINUTES.toMillis(10);
+    private static final ReleaseListCache instance = new ReleaseListCache();
+
+    private ReleaseList releaseList;
+    private long loadedAt;
+    private boolean invalidated;
+    private int generation;
+    private SettableFuture<ReleaseList> pending;
+
+    private ReleaseListCache() {
+    }
+
+    /**
+     * Get the shared instance.
+     *
+     * @return the instance
+     */
+    static ReleaseListCache getInstance() {
+        return instance;
+    }
+
+    /**
+     * Get the release list, fetching it if the cached copy is too old.
+     *
+     * @param httpCache the cache to download the list through
+     * @return the release list
+     * @throws IOException on I/O error
+     * @throws InterruptedException on interruption
+     */
+    ReleaseList get(@NonNull HttpCache httpCache) throws IOException, InterruptedException {
+        while (true) {
+            SettableFuture<ReleaseList> future;
+            boolean loading = false;
+            long maxAge = MAX_AGE;
+            int loadGeneration;
+
+            synchronized (this) {
+                long age = System.currentTimeMillis() - loadedAt;
+
+                if (releaseList != null && age >= 0 && age < MAX_AGE) {
+                    return releaseList;
+                }
+
+                if (pending == null) {
+                    pending = SettableFuture.create();
+                    loading = true;
+                    maxAge = invalidated ? 0 : MAX_AGE;
+                    invalidated = false;
+                }
+
+                future = pending;
+                loadGeneration = generation;
+            }
+
+            if (loading) {
+                return load(httpCache, future, loadGeneration, maxAge);
+            }
+
+            try {
+                return future.get();
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof InterruptedException) {
+                    continue; // Only the thread loading the list was interrupted
+                }
+                Throwables.propagateIfPossible(cause, IOException.class);
+                throw new IOException("Failed to get the release list", cause);
+            }
+        }
+    }
+
+    /**
+     * Fetch the release list and complete the given future with it.
+     *
+     * <p>The list is not kept if the cache was invalidated while it was
+     * being fetched.</p>
+     *
+     * @param httpCache the cache to download the list through
+     * @param future the future to complete
+     * @param loadGeneration the generation of the cache when loading started
+     * @param maxAge the age that a copy cached on disk is trusted for
+     * @return the release list
+     * @throws IOException on I/O error
+     * @throws InterruptedException on interruption
+     */
+    private ReleaseList load(HttpCache httpCache, SettableFuture<ReleaseList> future,
+                             int loadGeneration, long maxAge)
+            throws IOException, InterruptedException {
+        try {
+            File file = httpCache.get(url(Minecraft.VERSIONS_LIST_URL), maxAge);
+            ReleaseList list = new ObjectMapper().readValue(file, ReleaseList.class);
+
+            synchronized (this) {
+                if (generation == loadGeneration) {
+                    releaseList = list;
+                    loadedAt = System.currentTimeMillis();
+                }
+                pending = null;
+            }
+
+            future.set(list);
+            return list;
+        } catch (Throwable t) {
+            synchronized (this) {
+                pending = null;
+            }
+            future.setException(t);
+            Throwables.propagateIfPossible(t, IOException.class, InterruptedException.class);
+            throw new RuntimeException(t);
+        }
+    }
+
+    /**
+     * Forget the cached list so that it is checked for changes the next
+     * time that it is needed, including a list that is being fetched now.
+     */
+    synchronized void invalidate() {
+        releaseList = null;
+        invalidated = true;
+        generation++;
+    }
+
+}
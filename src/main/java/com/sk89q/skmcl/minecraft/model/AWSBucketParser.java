@@ -0,0 +1,139 @@
+/*
+ * SK's Minecraft Launcher
+ * Copyright (C) 2010, 2011 Albert Pham <http://www.sk89q.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.sk89q.skmcl.minecraft.model;
+
+import lombok.Getter;
+import lombok.NonNull;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.IOException;
+import java.io.InputStream;
+
+import static com.sk89q.skmcl.util.LauncherUtils.checkInterrupted;
+
+/**
+ * Reads a S3 bucket listing as a stream, handing each {@link AWSBucket.Item}
+ * to a handler as soon as it has been read rather than after the whole
+ * listing has been buffered.
+ */
+public class AWSBucketParser {
+
+    private static final XMLInputFactory inputFactory = XMLInputFactory.newInstance();
+
+    private final Handler handler;
+    @Getter
+    private String lastKey;
+    @Getter
+    private boolean truncated;
+
+    /**
+     * Create a new parser.
+     *
+     * @param handler the handler to pass items to
+     */
+    public AWSBucketParser(@NonNull Handler handler) {
+        this.handler = handler;
+    }
+
+    /**
+     * Parse a page of the listing.
+     *
+     * <p>After parsing, {@link #getLastKey()} returns the marker for the next
+     * page, if {@link #isTruncated()} indicates that there is one.</p>
+     *
+     * @param is the input stream, which will not be closed
+     * @throws IOException on I/O or parse error
+     * @throws InterruptedException on interruption
+     */
+    public void parse(InputStream is) throws IOException, InterruptedException {
+        XMLStreamReader reader = null;
+        AWSBucket.Item item = null;
+
+        truncated = false;
+
+        try {
+            reader = createReader(is);
+
+            while (reader.hasNext()) {
+                int event = reader.next();
+
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    String name = reader.getLocalName();
+
+                    if (item == null) {
+                        if (name.equals("Contents")) {
+                            item = new AWSBucket.Item();
+                        } else if (name.equals("IsTruncated")) {
+                            truncated = Boolean.parseBoolean(reader.getElementText().trim());
+                        }
+                    } else if (name.equals("Key")) {
+                        item.setKey(reader.getElementText());
+                    } else if (name.equals("ETag")) {
+                        item.setEtag(reader.getElementText());
+                    } else if (name.equals("Size")) {
+                        item.setSize(Integer.parseInt(reader.getElementText().trim()));
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    if (item != null && reader.getLocalName().equals("Contents")) {
+                        checkInterrupted();
+                        lastKey = item.getKey();
+                        handler.handle(item);
+                        item = null;
+                    }
+                }
+            }
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        } catch (NumberFormatException e) {
+            throw new IOException(e);
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (XMLStreamException ignored) {
+                }
+            }
+        }
+    }
+
+    private static XMLStreamReader createReader(InputStream is) throws XMLStreamException {
+        synchronized (inputFactory) {
+            return inputFactory.createXMLStreamReader(is);
+        }
+    }
+
+    /**
+     * Receives items as they are parsed.
+     */
+    public interface Handler {
+
+        /**
+         * Handle an item.
+         *
+         * @param item the item
+         * @throws InterruptedException on interruption
+         */
+        void handle(AWSBucket.Item item) throws InterruptedException;
+
+    }
+
+}
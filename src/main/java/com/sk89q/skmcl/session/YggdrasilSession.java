@@ -84,11 +84,11 @@ public class YggdrasilSession implements Session {
                 .execute();
 
         if (request.getResponseCode() != 200) {
-            ErrorResponse error = request.returnContent().asJson(ErrorResponse.class);
+            ErrorResponse error = request.asJsonStream(ErrorResponse.class);
             throw new AuthenticationException(error.getErrorMessage(), error.getErrorMessage());
         } else {
             AuthenticateResponse response =
-                    request.returnContent().asJson(AuthenticateResponse.class);
+                    request.asJsonStream(AuthenticateResponse.class);
             accessToken = response.getAccessToken();
             clientToken = response.getClientToken();
             identities = response.getAvailableProfiles();
@@ -108,11 +108,11 @@ public class YggdrasilSession implements Session {
                 .execute();
 
         if (request.getResponseCode() != 200) {
-            ErrorResponse error = request.returnContent().asJson(ErrorResponse.class);
+            ErrorResponse error = request.asJsonStream(ErrorResponse.class);
             throw new AuthenticationException(error.getErrorMessage(), error.getErrorMessage());
         } else {
             AuthenticateResponse response =
-                    request.returnContent().asJson(AuthenticateResponse.class);
+                    request.asJsonStream(AuthenticateResponse.class);
             accessToken = response.getAccessToken();
             clientToken = response.getClientToken();
             identities = response.getAvailableProfiles();
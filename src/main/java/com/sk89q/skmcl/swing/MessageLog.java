@@ -19,6 +19,7 @@
 package com.sk89q.skmcl.swing;
 
 import com.sk89q.mclauncher.util.LimitLinesDocumentListener;
+import com.sk89q.skmcl.concurrent.BlockingExecutors;
 import com.sk89q.skmcl.util.LauncherUtils;
 
 import javax.swing.*;
@@ -174,7 +175,7 @@ public class MessageLog extends JPanel {
     
     /**
      * Consume an input stream and print it to the dialog. The consumer
-     * will be in a separate daemon thread.
+     * will be in a separate background thread.
      * 
      * @param from stream to read
      */
@@ -184,7 +185,7 @@ public class MessageLog extends JPanel {
 
     /**
      * Consume an input stream and print it to the dialog. The consumer
-     * will be in a separate daemon thread.
+     * will be in a separate background thread.
      * 
      * @param from stream to read
      * @param color color to use
@@ -195,7 +196,7 @@ public class MessageLog extends JPanel {
 
     /**
      * Consume an input stream and print it to the dialog. The consumer
-     * will be in a separate daemon thread.
+     * will be in a separate background thread.
      * 
      * @param from stream to read
      * @param attributes attributes
@@ -213,7 +214,7 @@ public class MessageLog extends JPanel {
     private void consume(InputStream from, ConsoleOutputStream outputStream) {
         final InputStream in = from;
         final PrintWriter out = new PrintWriter(outputStream, true);
-        Thread thread = new Thread(new Runnable() {
+        BlockingExecutors.start("Message log consumer", new Runnable() {
             @Override
             public void run() {
                 byte[] buffer = new byte[1024];
@@ -232,8 +233,6 @@ public class MessageLog extends JPanel {
                 }
             }
         });
-        thread.setDaemon(true);
-        thread.start();
     }
 
     /**
@@ -18,13 +18,13 @@
 
 package com.sk89q.skmcl.swing;
 
+import com.sk89q.skmcl.concurrent.BlockingExecutors;
 import com.sk89q.skmcl.minecraft.MinecraftFaceLoader;
 
 import javax.swing.*;
 import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 
 import static com.sk89q.skmcl.util.LauncherUtils.checkInterrupted;
@@ -42,7 +42,7 @@ public class MinecraftFacePanel extends JButton {
         GENERIC_AVATAR = SwingHelper.readIconImage("/resources/face_generic.png");
     }
 
-    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final ExecutorService executor = BlockingExecutors.newExecutor("Face loader");
     private Future<BufferedImage> future;
     private String lastUsername;
     private BufferedImage face;
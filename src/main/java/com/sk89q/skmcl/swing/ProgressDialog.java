@@ -18,6 +18,7 @@
 
 package com.sk89q.skmcl.swing;
 
+import com.sk89q.skmcl.concurrent.ProgressSample;
 import com.sk89q.skmcl.concurrent.WorkerService;
 
 import javax.swing.*;
@@ -119,9 +120,10 @@ public class ProgressDialog extends JDialog implements Observer {
     }
 
     private synchronized void updateDisplay() {
-        final String title = workerService.getLocalizedTitle();
-        final String status = workerService.getLocalizedStatus();
-        final double progress = workerService.getProgress();
+        ProgressSample sample = workerService.sample();
+        final String title = sample.getLocalizedTitle();
+        final String status = sample.getLocalizedStatus();
+        final double progress = sample.getProgress();
 
         SwingUtilities.invokeLater(new Runnable() {
             @Override
@@ -108,6 +108,8 @@ public class VersionListDialog extends JDialog {
         ListenableFuture<?> future = executor.submit(new AbstractWorker<Object>() {
             @Override
             protected void run() throws Exception {
+                setLocalizedTitle(_("selectVersions.fetchingVersionsTitle"));
+
                 try {
                     setVersions(application.getAvailable());
                 } catch (IOException e) {
@@ -119,11 +121,6 @@ public class VersionListDialog extends JDialog {
                 }
             }
 
-            @Override
-            public String getLocalizedTitle() {
-                return _("selectVersions.fetchingVersionsTitle");
-            }
-
             @Override
             public boolean shouldConfirmInterrupt() {
                 return false;
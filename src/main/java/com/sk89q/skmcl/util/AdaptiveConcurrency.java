@@ -0,0 +1,126 @@
+/*
+ * SK's Minecraft Launcher
+ * Copyright (C) 2010, 2011 Albert Pham <http://www.sk89q.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.sk89q.skmcl.util;
+
+import lombok.Getter;
+
+/**
+ * Decides how many tasks should be run at the same time by watching how
+ * much work gets done per second and how often tasks fail.
+ *
+ * <p>Measurements are taken over windows of completed tasks. The limit is
+ * raised while each window does noticeably more work than the last, lowered
+ * when a window does noticeably less, and halved when a task fails.</p>
+ */
+public class AdaptiveConcurrency {
+
+    private static final long MIN_WINDOW_NANOS = 250L * 1000 * 1000;
+    private static final double INCREASE_THRESHOLD = 1.1;
+    private static final double DECREASE_THRESHOLD = 0.8;
+
+    /**
+     * Every completed task counts as this many bytes, so that the overhead
+     * of each request is taken into account when the tasks are small.
+     */
+    private static final long TASK_WEIGHT = 1024 * 32;
+
+    @Getter
+    private final int minimum;
+    @Getter
+    private final int maximum;
+    private int limit;
+
+    private long windowStart = System.nanoTime();
+    private long windowBytes;
+    private int windowCompleted;
+    private int windowFailed;
+    private double lastRate = -1;
+
+    /**
+     * Create a new instance.
+     *
+     * @param initial the initial limit
+     * @param minimum the minimum limit
+     * @param maximum the maximum limit
+     */
+    public AdaptiveConcurrency(int initial, int minimum, int maximum) {
+        if (minimum < 1 || maximum < minimum) {
+            throw new IllegalArgumentException("Invalid bounds");
+        }
+
+        this.minimum = minimum;
+        this.maximum = maximum;
+        this.limit = Math.max(minimum, Math.min(maximum, initial));
+    }
+
+    /**
+     * Get the number of tasks that should currently be run at the same time.
+     *
+     * @return the limit
+     */
+    public synchronized int getLimit() {
+        return limit;
+    }
+
+    /**
+     * Record a task that has completed.
+     *
+     * @param bytes the number of bytes that the task transferred
+     */
+    public synchronized void success(long bytes) {
+        windowBytes += bytes;
+        windowCompleted++;
+        evaluate();
+    }
+
+    /**
+     * Record a task that has failed.
+     */
+    public synchronized void failure() {
+        windowFailed++;
+        evaluate();
+    }
+
+    private void evaluate() {
+        long now = System.nanoTime();
+        long elapsed = now - windowStart;
+
+        if (windowCompleted + windowFailed < limit || elapsed < MIN_WINDOW_NANOS) {
+            return;
+        }
+
+        double rate = (windowBytes + windowCompleted * TASK_WEIGHT) / (elapsed / 1e9);
+
+        if (windowFailed > 0) {
+            limit = Math.max(minimum, limit / 2);
+            rate = -1; // Start measuring afresh
+        } else if (lastRate < 0 || rate > lastRate * INCREASE_THRESHOLD) {
+            limit = Math.min(maximum, limit + 1);
+        } else if (rate < lastRate * DECREASE_THRESHOLD) {
+            limit = Math.max(minimum, limit - 1);
+        }
+
+        lastRate = rate;
+        windowStart = now;
+        windowBytes = 0;
+        windowCompleted = 0;
+        windowFailed = 0;
+    }
+
+}
@@ -0,0 +1,138 @@
+/*
+ * SK's Minecraft Launcher
+ * Copyright (C) 2010, 2011 Albert Pham <http://www.sk89q.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.sk89q.skmcl.util;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import lombok.NonNull;
+import org.apache.commons.codec.binary.Hex;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+
+import static org.apache.commons.io.IOUtils.closeQuietly;
+
+/**
+ * Hashes files on a pool of threads.
+ *
+ * <p>Each thread reads files through its own large buffer, which is re-used
+ * so that hashing many files doesn't allocate a buffer for each one.
+ * Memory mapping is avoided because a mapped file can't be replaced on
+ * Windows until the mapping has been garbage collected.</p>
+ */
+public class FileHasher {
+
+    public static final String MD5 = "MD5";
+    public static final String SHA1 = "SHA-1";
+
+    private static final int BUFFER_SIZE = 1024 * 512;
+    private static final ThreadLocal<ByteBuffer> buffers = new ThreadLocal<ByteBuffer>() {
+        @Override
+        protected ByteBuffer initialValue() {
+            return ByteBuffer.allocate(BUFFER_SIZE);
+        }
+    };
+
+    private final ListeningExecutorService executor;
+
+    /**
+     * Create a new hasher with a thread for each processor.
+     */
+    public FileHasher() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Create a new hasher.
+     *
+     * @param threads the number of threads to hash with
+     */
+    public FileHasher(int threads) {
+        executor = MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(threads));
+    }
+
+    /**
+     * Hash a file on one of the hasher's threads.
+     *
+     * @param file the file
+     * @param algorithm the digest algorithm, such as {@link #MD5}
+     * @return a future for the hash as a lowercase hex string
+     */
+    public ListenableFuture<String> submit(@NonNull final File file, @NonNull final String algorithm) {
+        return executor.submit(new Callable<String>() {
+            @Override
+            public String call() throws IOException {
+                return hash(file, algorithm);
+            }
+        });
+    }
+
+    /**
+     * Stop the hasher's threads, cancelling hashes that have not completed.
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Hash a file on the current thread.
+     *
+     * @param file the file
+     * @param algorithm the digest algorithm, such as {@link #MD5}
+     * @return the hash as a lowercase hex string
+     * @throws IOException on I/O error
+     */
+    public static String hash(@NonNull File file, @NonNull String algorithm) throws IOException {
+        MessageDigest digest;
+
+        try {
+            digest = MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalArgumentException(e);
+        }
+
+        FileInputStream fis = null;
+        ByteBuffer buffer = buffers.get();
+
+        try {
+            fis = new FileInputStream(file);
+            FileChannel channel = fis.getChannel();
+
+            int len;
+            buffer.clear();
+            while ((len = channel.read(buffer)) != -1) {
+                digest.update(buffer.array(), 0, len);
+                buffer.clear();
+            }
+        } finally {
+            closeQuietly(fis);
+        }
+
+        return new String(Hex.encodeHex(digest.digest()));
+    }
+
+}
@@ -0,0 +1,174 @@
+/*
+ * SK's Minecraft Launcher
+ * Copyright (C) 2010, 2011 Albert Pham <http://www.sk89q.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.sk89q.skmcl.util;
+
+import lombok.Data;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.java.Log;
+import org.apache.commons.codec.digest.DigestUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.util.logging.Level;
+
+/**
+ * Keeps copies of files downloaded over HTTP along with their ETag and
+ * Last-Modified headers, so that they are only downloaded again if they
+ * have changed on the server.
+ *
+ * <p>If the server can't be reached, the cached copy is used instead.</p>
+ */
+@Log
+public class HttpCache {
+
+    @Getter
+    private final File dir;
+
+    /**
+     * Create a new cache.
+     *
+     * @param dir the directory to store cached responses in
+     */
+    public HttpCache(@NonNull File dir) {
+        this.dir = dir;
+    }
+
+    /**
+     * Get an up to date copy of the file at the given URL.
+     *
+     * <p>The returned file must not be modified.</p>
+     *
+     * @param url the URL
+     * @return the path to the cached copy
+     * @throws IOException thrown on I/O error if there is no cached copy
+     * @throws InterruptedException thrown on interruption
+     */
+    public File get(@NonNull URL url) throws IOException, InterruptedException {
+        return get(url, 0);
+    }
+
+    /**
+     * Get a copy of the file at the given URL, only checking for a newer
+     * copy if the cached copy was last checked longer ago than the given age.
+     *
+     * @param url the URL
+     * @param maxAge the age in milliseconds that a cached copy is trusted for
+     * @return the path to the cached copy
+     * @throws IOException thrown on I/O error if there is no cached copy
+     * @throws InterruptedException thrown on interruption
+     */
+    public File get(@NonNull URL url, long maxAge) throws IOException, InterruptedException {
+        String id = DigestUtils.shaHex(url.toString());
+        File file = new File(dir, id);
+        File validatorsFile = new File(dir, id + ".json");
+        Validators validators = file.exists() ?
+                Persistence.load(validatorsFile, Validators.class, true) : null;
+
+        long now = System.currentTimeMillis();
+
+        if (validators != null && now - validators.getChecked() < maxAge
+                && validators.getChecked() <= now) {
+            log.log(Level.INFO, "Using recently checked copy of {0}", url);
+            return file;
+        }
+
+        HttpRequest request = HttpRequest.get(url);
+
+        if (validators != null) {
+            if (validators.getEtag() != null) {
+                request.header("If-None-Match", validators.getEtag());
+            }
+            if (validators.getLastModified() != null) {
+                request.header("If-Modified-Since", validators.getLastModified());
+            }
+        }
+
+        try {
+            request.execute();
+
+            if (validators != null && request.getResponseCode() == 304) {
+                request.close();
+                log.log(Level.INFO, "Using cached copy of {0}", url);
+                validators.setChecked(now);
+                writeValidators(validatorsFile, validators);
+                return file;
+            }
+
+            request.expectResponseCode(200);
+
+            Validators newValidators = new Validators();
+            newValidators.setUrl(url.toString());
+            newValidators.setEtag(request.getResponseHeader("ETag"));
+            newValidators.setLastModified(request.getResponseHeader("Last-Modified"));
+            newValidators.setChecked(now);
+
+            dir.mkdirs();
+            File tempFile = File.createTempFile(id, ".tmp", dir);
+
+            try {
+                request.saveContent(tempFile);
+
+                file.delete();
+                if (!tempFile.renameTo(file)) {
+                    throw new IOException(String.format(
+                            "Failed to rename %s to %s", tempFile, file));
+                }
+            } finally {
+                tempFile.delete();
+            }
+
+            Persistence.write(validatorsFile, newValidators);
+
+            return file;
+        } catch (IOException e) {
+            request.abort();
+
+            if (validators != null && file.exists()) {
+                log.log(Level.WARNING, "Failed to check " + url + " for changes, " +
+                        "so using the cached copy", e);
+                return file;
+            }
+
+            throw e;
+        }
+    }
+
+    private static void writeValidators(File file, Validators validators) {
+        try {
+            Persistence.write(file, validators);
+        } catch (IOException e) {
+            log.log(Level.WARNING, "Failed to write " + file, e);
+        }
+    }
+
+    /**
+     * The headers used to check whether a cached copy is still current, and
+     * when it was last checked.
+     */
+    @Data
+    public static class Validators {
+        private String url;
+        private String etag;
+        private String lastModified;
+        private long checked;
+    }
+
+}
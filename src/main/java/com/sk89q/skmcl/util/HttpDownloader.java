@@ -19,15 +19,18 @@
 package com.sk89q.skmcl.util;
 
 import com.sk89q.skmcl.concurrent.AbstractWorker;
-import com.sk89q.skmcl.concurrent.SwingProgressObserver;
-import com.sk89q.skmcl.concurrent.WorkUnit;
+import com.sk89q.skmcl.concurrent.ProgressSampler;
 import com.sk89q.skmcl.concurrent.ProgressUpdater;
+import com.google.common.util.concurrent.ListenableFutureTask;
+import com.google.common.util.concurrent.MoreExecutors;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.ToString;
 import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.FilenameUtils;
 
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
 import java.net.URL;
@@ -35,8 +38,9 @@ import java.util.*;
 import java.util.concurrent.*;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
-import static com.sk89q.skmcl.util.LauncherUtils.checkInterrupted;
 import static com.sk89q.skmcl.util.SharedLocale._;
 
 /**
@@ -44,9 +48,21 @@ import static com.sk89q.skmcl.util.SharedLocale._;
  *
  * <ul>
  *     <li>On failure of a download, a defined delay will occur and retries will be
- *     attempted up until the retry limit.</li>
+ *     attempted up until the retry limit. Partially downloaded files are kept and
+ *     resumed with a range request, even across restarts of the launcher.</li>
  *     <li>Multiple downloads can occur asynchronously, and all downloads will be
  *     attempted even if all failed.</li>
+ *     <li>The number of downloads from each host that run at the same time is
+ *     adjusted according to the measured throughput and error rate. Smaller
+ *     files are downloaded first, while large files are downloaded on their
+ *     own lanes so that they are not left until the end.</li>
+ *     <li>Files can be submitted as background downloads, which wait behind
+ *     all other queued files on the same lane, and {@link #awaitRequired()}
+ *     can return before they are done.</li>
+ *     <li>Progress is weighted by the size of each file, and the transfer rate
+ *     and time remaining are estimated with a {@link TransferMeter}. Background
+ *     files are metered separately, so that they don't hold back the progress
+ *     of the files that are being waited for.</li>
  *     <li>After all files are downloaded, an exception will be raised for the first
  *     file that failed to download.</li>
  *     <li>As a {@link Callable}, an instance will return a list of {@link Future} for
@@ -58,12 +74,28 @@ public class HttpDownloader
         implements ProgressUpdater {
 
     private static final Logger logger = LauncherUtils.getLogger(HttpDownloader.class);
+    private static final Pattern CONTENT_RANGE_PATTERN = Pattern.compile("bytes\\s+(\\d+)-");
+
+    /**
+     * Files at least this large (in bytes) are downloaded on the large file lanes.
+     */
+    public static final long LARGE_FILE_SIZE = 1024 * 1024;
+    private static final int LARGE_FILE_LANES = 2;
+    private static final int INITIAL_HOST_CONCURRENCY = 4;
 
     private final ExecutorService executor;
-    private final List<Future<RemoteFile>> executed = new ArrayList<Future<RemoteFile>>();
-    private final List<RemoteFile> active = new ArrayList<RemoteFile>();
+    private final List<RemoteFile> executed = new ArrayList<RemoteFile>();
     private final Set<String> usedHashes = new HashSet<String>();
-    private int numProcessed;
+    private final Map<String, HostLane> lanes = new HashMap<String, HostLane>();
+    private final Queue<RemoteFile> largePending = new PriorityQueue<RemoteFile>();
+    private int largeInFlight;
+    private long numSubmitted;
+    @Getter
+    private final TransferMeter requiredMeter = new TransferMeter();
+    @Getter
+    private final TransferMeter backgroundMeter = new TransferMeter();
+    private volatile boolean awaitingBackground;
+    private volatile RemoteFile lastStarted;
     @Getter @Setter
     private boolean overwrite = false;
     @Getter @Setter
@@ -74,6 +106,9 @@ public class HttpDownloader
     /**
      * Create a new downloader using the given executor.
      *
+     * <p>The downloader decides how many downloads run at the same time, so
+     * the executor should not limit the number of threads much further.</p>
+     *
      * @param executor the executor
      */
     public HttpDownloader(ExecutorService executor) {
@@ -89,14 +124,73 @@ public class HttpDownloader
      * @return the destination file
      */
     public File submit(File baseDir, URL url, String versionId) {
+        return submit(baseDir, url, versionId, -1);
+    }
+
+    /**
+     * Submit a file to be downloaded.
+     *
+     * @param baseDir the base directory to store downloaded files
+     * @param url the URL to download from
+     * @param versionId a unique ID to identify this URL and version, or null to use URL
+     * @param size the expected size of the file in bytes, or -1 if not known
+     * @return the destination file
+     */
+    public File submit(File baseDir, URL url, String versionId, long size) {
+        return submit(baseDir, url, versionId, size, false);
+    }
+
+    /**
+     * Submit a file to be downloaded.
+     *
+     * @param baseDir the base directory to store downloaded files
+     * @param url the URL to download from
+     * @param versionId a unique ID to identify this URL and version, or null to use URL
+     * @param size the expected size of the file in bytes, or -1 if not known
+     * @param background true if the file is not needed until later
+     * @return the destination file
+     */
+    public File submit(File baseDir, URL url, String versionId, long size, boolean background) {
+        return queue(baseDir, url, versionId, size, background).getDestination();
+    }
+
+    /**
+     * Submit a file to be downloaded.
+     *
+     * @param baseDir the base directory to store downloaded files
+     * @param url the URL to download from
+     * @param versionId a unique ID to identify this URL and version, or null to use URL
+     * @param size the expected size of the file in bytes, or -1 if not known
+     * @param background true if the file is not needed until later
+     * @return the queued file, whose future completes once it has been downloaded
+     */
+    public RemoteFile queue(File baseDir, URL url, String versionId, long size, boolean background) {
         String id = makeHashUnique(
                 DigestUtils.shaHex(versionId != null ? versionId : url.toString()));
         String dir = id.substring(0, 1);
         File file = new File(baseDir, dir + "/" + id);
+        RemoteFile remoteFile = new RemoteFile(file, url, size, background);
+
         synchronized (executed) {
-            executed.add(executor.submit(new RemoteFile(file, url)));
+            executed.add(remoteFile);
         }
-        return file;
+
+        getScope().addFuture(remoteFile.getFuture());
+
+        remoteFile.getMeter().expect(size);
+
+        synchronized (lanes) {
+            remoteFile.sequence = numSubmitted++;
+            if (size >= LARGE_FILE_SIZE) {
+                largePending.add(remoteFile);
+            } else {
+                getLane(url).pending.add(remoteFile);
+            }
+        }
+
+        dispatch();
+
+        return remoteFile;
     }
 
     /**
@@ -106,43 +200,172 @@ public class HttpDownloader
      * @return a unique hash
      */
     private String makeHashUnique(String baseId) {
-        String id = baseId;
-        int i = 0;
+        synchronized (usedHashes) {
+            String id = baseId;
+            int i = 0;
+
+            while (usedHashes.contains(id)) {
+                id = baseId + (i++);
+            }
+
+            usedHashes.add(id);
 
-        while (usedHashes.contains(id)) {
-            id = baseId + (i++);
+            return id;
         }
+    }
 
-        usedHashes.add(id);
+    /**
+     * Get the lane for downloads from the host of the given URL.
+     *
+     * @param url the URL
+     * @return the lane
+     */
+    private HostLane getLane(URL url) {
+        String host = url.getHost().toLowerCase();
+        HostLane lane = lanes.get(host);
+        if (lane == null) {
+            lane = new HostLane();
+            lanes.put(host, lane);
+        }
+        return lane;
+    }
 
-        return id;
+    /**
+     * Start as many pending downloads as the lanes currently allow.
+     */
+    private void dispatch() {
+        List<RemoteFile> toStart = new ArrayList<RemoteFile>();
+
+        synchronized (lanes) {
+            while (largeInFlight < LARGE_FILE_LANES && !largePending.isEmpty()) {
+                RemoteFile file = largePending.poll();
+                if (!file.getFuture().isDone()) {
+                    largeInFlight++;
+                    file.started = true;
+                    toStart.add(file);
+                }
+            }
+
+            for (HostLane lane : lanes.values()) {
+                while (lane.inFlight < lane.concurrency.getLimit() && !lane.pending.isEmpty()) {
+                    RemoteFile file = lane.pending.poll();
+                    if (!file.getFuture().isDone()) {
+                        lane.inFlight++;
+                        file.started = true;
+                        toStart.add(file);
+                    }
+                }
+            }
+        }
+
+        for (RemoteFile file : toStart) {
+            try {
+                executor.execute(file.getFuture());
+            } catch (RejectedExecutionException e) {
+                file.getFuture().cancel(false);
+            }
+        }
+    }
+
+    /**
+     * Called when a download that was started has finished.
+     *
+     * @param file the file
+     */
+    private void finished(RemoteFile file) {
+        synchronized (lanes) {
+            if (file.getSize() >= LARGE_FILE_SIZE) {
+                largeInFlight--;
+            } else {
+                getLane(file.getUrl()).inFlight--;
+            }
+        }
+
+        dispatch();
+    }
+
+    /**
+     * Cancel all downloads that have not yet completed.
+     */
+    private void cancelAll() {
+        synchronized (executed) {
+            for (RemoteFile file : executed) {
+                file.getFuture().cancel(true);
+            }
+        }
     }
 
     @Override
     public List<Future<RemoteFile>> call() throws ExecutionException, InterruptedException {
-        executor.shutdown();
-        TimerTask timerTask = SwingProgressObserver.updatePeriodically(this);
+        return await(true);
+    }
+
+    /**
+     * Wait for all downloads that were not submitted as background downloads.
+     *
+     * @return a list of futures for all files, including background files
+     *         that may not have been downloaded yet
+     * @throws ExecutionException thrown for the first download that failed
+     * @throws InterruptedException thrown on interruption
+     */
+    public List<Future<RemoteFile>> awaitRequired() throws ExecutionException, InterruptedException {
+        return await(false);
+    }
+
+    private List<Future<RemoteFile>> await(boolean includeBackground)
+            throws ExecutionException, InterruptedException {
+        awaitingBackground = includeBackground;
+        ProgressSampler.getInstance().add(this);
 
         try {
-            try {
-                while (!executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS));
-            } catch (InterruptedException e) {
-                executor.shutdownNow();
-                throw new InterruptedException();
+            ExecutionException firstException = null;
+            int i = 0;
+
+            // Run through all the jobs to see whether any failed, including
+            // any jobs that are submitted while we wait
+            while (true) {
+                RemoteFile file;
+
+                synchronized (executed) {
+                    if (i >= executed.size()) {
+                        break;
+                    }
+                    file = executed.get(i++);
+                }
+
+                if (file.isBackground() && !includeBackground) {
+                    continue;
+                }
+
+                try {
+                    file.getFuture().get();
+                } catch (ExecutionException e) {
+                    if (firstException == null) {
+                        firstException = e;
+                    }
+                } catch (CancellationException e) {
+                    if (firstException == null) {
+                        firstException = new ExecutionException(e);
+                    }
+                } catch (InterruptedException e) {
+                    cancelAll();
+                    throw e;
+                }
             }
 
-            WorkUnit parts = split(1, executed.size());
+            if (firstException != null) {
+                throw firstException;
+            }
 
-            // Run through all the jobs to see whether any failed
+            List<Future<RemoteFile>> futures = new ArrayList<Future<RemoteFile>>();
             synchronized (executed) {
-                for (Future<RemoteFile> future : executed) {
-                    RemoteFile file = future.get();
+                for (RemoteFile file : executed) {
+                    futures.add(file.getFuture());
                 }
             }
-
-            return executed;
+            return futures;
         } finally {
-            timerTask.cancel();
+            ProgressSampler.getInstance().remove(this);
         }
     }
 
@@ -150,18 +373,78 @@ public class HttpDownloader
      * A file that has been queued with a given URL to download from and a destination
      * path to save the downloaded file to.
      */
-    @ToString
-    public class RemoteFile implements Callable<RemoteFile> {
+    @ToString(of = {"destination", "url", "size", "background"})
+    public class RemoteFile implements Callable<RemoteFile>, Comparable<RemoteFile> {
         @Getter
         private final File destination;
         @Getter
         private final URL url;
         @Getter
-        private HttpRequest httpRequest;
+        private final long size;
+        @Getter
+        private final boolean background;
+        @Getter
+        private final ListenableFutureTask<RemoteFile> future;
+        @Getter
+        private volatile HttpRequest httpRequest;
+        private long sequence;
+        private boolean started;
+        private long expectedSize;
+        private long countedBytes;
+
+        /**
+         * Get the meter that this file's bytes are counted with.
+         *
+         * @return the meter
+         */
+        private TransferMeter getMeter() {
+            return background ? backgroundMeter : requiredMeter;
+        }
 
-        private RemoteFile(File destination, URL url) {
+        private RemoteFile(File destination, URL url, long size, boolean background) {
             this.destination = destination;
             this.url = url;
+            this.size = size;
+            this.background = background;
+            this.expectedSize = size;
+            this.future = ListenableFutureTask.create(this);
+
+            future.addListener(new Runnable() {
+                @Override
+                public void run() {
+                    boolean wasStarted;
+                    synchronized (lanes) {
+                        wasStarted = started;
+                    }
+                    if (wasStarted) {
+                        finished(RemoteFile.this);
+                    }
+                    getScope().remove(future);
+                }
+            }, MoreExecutors.sameThreadExecutor());
+        }
+
+        /**
+         * Background files come last. Otherwise, files of unknown size come
+         * first, followed by smaller files.
+         */
+        @Override
+        public int compareTo(RemoteFile o) {
+            if (background != o.background) {
+                return background ? 1 : -1;
+            }
+
+            if (size != o.size) {
+                if (size < 0) {
+                    return -1;
+                } else if (o.size < 0) {
+                    return 1;
+                } else {
+                    return size < o.size ? -1 : 1;
+                }
+            }
+
+            return sequence < o.sequence ? -1 : (sequence > o.sequence ? 1 : 0);
         }
 
         @Override
@@ -170,37 +453,41 @@ public class HttpDownloader
 
             if (!overwrite && file.exists()) {
                 logger.log(Level.INFO, "Skipping {0} because it is already downloaded", this);
+                completed(file.length());
             } else {
                 logger.log(Level.INFO, "Downloading {0}...", this);
+                lastStarted = this;
+
+                File parentFile = file.getParentFile();
+                parentFile.mkdirs();
+                File tempFile = new File(parentFile, file.getName() + ".tmpdownload");
+                File validatorFile = new File(parentFile, file.getName() + ".tmpdownload.etag");
+                int trial = 0;
+
+                // Cancelling the downloader disconnects the current request
+                Closeable connection = getScope().addCloseable(new Closeable() {
+                    @Override
+                    public void close() {
+                        HttpRequest request = httpRequest;
+                        if (request != null) {
+                            request.abort();
+                        }
+                    }
+                });
 
                 try {
-                    File parentFile = file.getParentFile();
-                    parentFile.mkdirs();
-                    File tempFile = new File(parentFile, file.getName() + ".tmpdownload");
-                    int trial = 0;
-
                     while (true) {
-                        tempFile.delete();
-
                         checkInterrupted();
 
                         try {
-                            httpRequest =
-                                    HttpRequest
-                                    .get(getUrl());
-
-                            synchronized (active) {
-                                active.add(this);
+                            if (download(tempFile, validatorFile)) {
+                                recordSuccess();
+                                break;
                             }
-
-                            httpRequest
-                                    .execute()
-                                    .expectResponseCode(200)
-                                    .saveContent(tempFile);
-
-                            break;
                         } catch (IOException e) {
-                            if (trial >= tryCount) {
+                            recordFailure();
+
+                            if (++trial >= tryCount) {
                                 logger.log(Level.WARNING, "Failed to download " + getUrl(), e);
                                 throw e;
                             } else {
@@ -209,56 +496,265 @@ public class HttpDownloader
                             }
                         }
                     }
-
-                    file.delete();
-                    if (!tempFile.renameTo(file)) {
-                        throw new IOException(
-                                String.format("Failed to rename %s to %s", tempFile, file));
-                    }
                 } finally {
-                    synchronized (active) {
-                        active.remove(this);
-                        numProcessed++;
-                    }
+                    getScope().remove(connection);
+                }
+
+                completed(tempFile.length());
+
+                file.delete();
+                if (!tempFile.renameTo(file)) {
+                    throw new IOException(
+                            String.format("Failed to rename %s to %s", tempFile, file));
                 }
+                validatorFile.delete();
             }
 
             return this;
         }
-    }
 
-    @Override
-    public void updateProgress() {
-        double itemProgressTotal = 1 / (double) executed.size();
-        double progress = numProcessed / (double) executed.size();
-
-        synchronized (active) {
-            StringBuilder builder = new StringBuilder();
-            boolean first = true;
-            for (RemoteFile file : active) {
-                if (first) {
-                    first = false;
-                } else {
-                    builder.append(", ");
+        /**
+         * Count the bytes of the file towards the progress, correcting the
+         * expected size if it was wrong.
+         *
+         * @param bytes the number of bytes so far
+         * @param total the size of the whole file, or -1 if not known
+         */
+        private void counted(long bytes, long total) {
+            getMeter().adjustDone(bytes - countedBytes);
+            countedBytes = bytes;
+
+            if (total >= 0) {
+                if (expectedSize < 0) {
+                    getMeter().resolveSize(total);
+                } else if (total != expectedSize) {
+                    getMeter().adjustExpected(total - expectedSize);
                 }
+                expectedSize = total;
+            }
+        }
 
-                HttpRequest httpRequest = file.getHttpRequest();
-                double itemProgress = httpRequest.getProgress();
+        /**
+         * Count the whole file as complete.
+         *
+         * @param length the length of the file
+         */
+        private void completed(long length) {
+            counted(length, length);
+        }
 
-                if (itemProgress >= 0) {
-                    progress += itemProgress * itemProgressTotal;
+        private void recordSuccess() {
+            if (size < LARGE_FILE_SIZE) {
+                AdaptiveConcurrency concurrency;
+                synchronized (lanes) {
+                    concurrency = getLane(url).concurrency;
+                }
+                concurrency.success(httpRequest.getReadBytes());
+            }
+        }
 
-                    builder.append(_("downloader.fileListPct",
-                            FilenameUtils.getName(file.getUrl().getPath()),
-                            itemProgress));
-                } else {
-                    builder.append(FilenameUtils.getName(file.getUrl().getPath()));
+        private void recordFailure() {
+            if (size < LARGE_FILE_SIZE) {
+                AdaptiveConcurrency concurrency;
+                synchronized (lanes) {
+                    concurrency = getLane(url).concurrency;
                 }
+                concurrency.failure();
+            }
+        }
+
+        /**
+         * Download the file to the temporary file, resuming from where a previous
+         * attempt left off if the server supports it.
+         *
+         * <p>The ETag (or Last-Modified date) of the response is kept in the
+         * validator file so that a partial file is only resumed if the remote
+         * file has not changed since.</p>
+         *
+         * @param tempFile the temporary file
+         * @param validatorFile the file to store the validator for the partial file
+         * @return true if the download completed, false to try again immediately
+         * @throws IOException on I/O error
+         * @throws InterruptedException on interruption
+         */
+        private boolean download(File tempFile, File validatorFile)
+                throws IOException, InterruptedException {
+            long offset = tempFile.length();
+            String validator = offset > 0 ? readValidator(validatorFile) : null;
+
+            // Can't tell whether the partial file is still good
+            if (validator == null) {
+                tempFile.delete();
+                validatorFile.delete();
+                offset = 0;
+            }
 
+            counted(offset, -1);
+
+            httpRequest = HttpRequest.get(getUrl()).meter(getMeter());
+
+            if (validator != null) {
+                logger.log(Level.INFO, "Resuming {0} from byte {1}", new Object[] { getUrl(), offset });
+                httpRequest
+                        .header("Range", "bytes=" + offset + "-")
+                        .header("If-Range", validator);
             }
 
-            push(progress, _("downloader.downloadingMany", builder.toString()));
+            httpRequest.execute();
+            int code = httpRequest.getResponseCode();
+            long contentLength = getContentLength(httpRequest);
+
+            if (validator != null && code == 206) {
+                if (getRangeStart(httpRequest.getResponseHeader("Content-Range")) != offset) {
+                    httpRequest.close();
+                    tempFile.delete();
+                    validatorFile.delete();
+                    return false;
+                }
+
+                counted(offset, contentLength >= 0 ? offset + contentLength : -1);
+                save(tempFile, true);
+            } else if (validator != null && code == 416) {
+                // The partial file is no good, so start from scratch
+                httpRequest.close();
+                tempFile.delete();
+                validatorFile.delete();
+                return false;
+            } else {
+                httpRequest.expectResponseCode(200);
+                writeValidator(validatorFile, getValidator(httpRequest));
+                counted(0, contentLength);
+                save(tempFile, false);
+            }
+
+            return true;
+        }
+
+        private void save(File tempFile, boolean append) throws IOException, InterruptedException {
+            // The request counts its bytes with the meter as it reads them
+            long start = countedBytes;
+
+            try {
+                httpRequest.saveContent(tempFile, append);
+            } finally {
+                countedBytes = start + httpRequest.getReadBytes();
+            }
+        }
+    }
+
+    /**
+     * Get the value of the Content-Length header of a response.
+     *
+     * @param request the request
+     * @return the length, or -1 if there is none
+     */
+    private static long getContentLength(HttpRequest request) {
+        try {
+            String field = request.getResponseHeader("Content-Length");
+            return field != null ? Long.parseLong(field.trim()) : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Get a strong validator that can be used in an If-Range header to
+     * resume the response later.
+     *
+     * @param request the request
+     * @return the validator, or null if there is none
+     */
+    private static String getValidator(HttpRequest request) {
+        String etag = request.getResponseHeader("ETag");
+
+        if (etag != null && !etag.startsWith("W/")) {
+            return etag;
+        } else {
+            return request.getResponseHeader("Last-Modified");
+        }
+    }
+
+    /**
+     * Get the first byte position of a Content-Range header.
+     *
+     * @param contentRange the header value, such as "bytes 100-999/1000"
+     * @return the first byte position, or -1 if it can't be read
+     */
+    private static long getRangeStart(String contentRange) {
+        if (contentRange == null) {
+            return -1;
+        }
+
+        Matcher matcher = CONTENT_RANGE_PATTERN.matcher(contentRange);
+        if (matcher.find()) {
+            return Long.parseLong(matcher.group(1));
+        } else {
+            return -1;
         }
     }
 
+    private static String readValidator(File file) {
+        try {
+            if (file.exists()) {
+                String validator = FileUtils.readFileToString(file, "UTF-8").trim();
+                return validator.length() > 0 ? validator : null;
+            }
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Failed to read " + file.getAbsolutePath(), e);
+        }
+
+        return null;
+    }
+
+    private static void writeValidator(File file, String validator) {
+        if (validator == null) {
+            file.delete();
+        } else {
+            try {
+                FileUtils.writeStringToFile(file, validator, "UTF-8");
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "Failed to write " + file.getAbsolutePath(), e);
+            }
+        }
+    }
+
+    /**
+     * Downloads from one host that are not on the large file lanes.
+     */
+    private static class HostLane {
+        private final Queue<RemoteFile> pending = new PriorityQueue<RemoteFile>();
+        private final AdaptiveConcurrency concurrency = new AdaptiveConcurrency(
+                INITIAL_HOST_CONCURRENCY, 1, HttpTransport.MAX_CONNECTIONS_PER_HOST);
+        private int inFlight;
+    }
+
+    @Override
+    public void updateProgress() {
+        requiredMeter.sample();
+        backgroundMeter.sample();
+
+        // Background files are only awaited once the required ones are done
+        TransferMeter meter = awaitingBackground ? backgroundMeter : requiredMeter;
+
+        RemoteFile file = lastStarted;
+        String name = file != null ? FilenameUtils.getName(file.getUrl().getPath()) : "";
+        double megabytesDone = meter.getDone() / (1024.0 * 1024.0);
+        double megabytesTotal = meter.getExpected() / (1024.0 * 1024.0);
+        double rate = meter.getRate();
+        long remaining = meter.getRemainingSeconds();
+        String status;
+
+        if (rate < 0) {
+            status = _("downloader.downloadingBytes", name, megabytesDone, megabytesTotal);
+        } else if (remaining < 0) {
+            status = _("downloader.downloadingRate", name, megabytesDone, megabytesTotal,
+                    rate / 1024);
+        } else {
+            status = _("downloader.downloadingEta", name, megabytesDone, megabytesTotal,
+                    rate / 1024, String.format("%d:%02d", remaining / 60, remaining % 60));
+        }
+
+        push(meter.getProgress(), status);
+    }
+
 }
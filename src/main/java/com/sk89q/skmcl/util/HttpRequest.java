@@ -18,8 +18,6 @@
 
 package com.sk89q.skmcl.util;
 
-import com.sk89q.skmcl.concurrent.ProgressUpdater;
-import com.sk89q.skmcl.concurrent.SwingProgressObserver;
 import com.sk89q.skmcl.concurrent.WorkUnit;
 import lombok.extern.java.Log;
 import org.codehaus.jackson.map.ObjectMapper;
@@ -38,12 +36,17 @@ import static org.apache.commons.io.IOUtils.closeQuietly;
 /**
  * A simple fluent interface for performing HTTP requests that uses
  * {@link java.net.HttpURLConnection} or {@link HttpsURLConnection}.
+ *
+ * <p>Connections are kept alive and re-used once a request has been closed,
+ * and the number of concurrent connections to a host is limited by
+ * {@link HttpTransport}.</p>
  */
 @Log
-public class HttpRequest extends WorkUnit implements Closeable, ProgressUpdater {
+public class HttpRequest extends WorkUnit implements Closeable {
 
     private static final int READ_TIMEOUT = 1000 * 60 * 10;
     private static final int READ_BUFFER_SIZE = 1024 * 8;
+    private static final int MAX_PRESIZED_LENGTH = 1024 * 1024 * 64;
 
     private final ObjectMapper mapper = new ObjectMapper();
     private final Map<String, String> headers = new HashMap<String, String>();
@@ -54,8 +57,16 @@ public class HttpRequest extends WorkUnit implements Closeable, ProgressUpdater
     private HttpURLConnection conn;
     private InputStream inputStream;
 
+    private boolean holdingPermit;
+    private boolean disconnected;
+
     private long contentLength = -1;
-    private long readBytes = 0;
+    private volatile long readBytes = 0;
+    private TransferMeter transferMeter;
+
+    static {
+        HttpTransport.init();
+    }
 
     /**
      * Create a new HTTP request.
@@ -105,6 +116,17 @@ public class HttpRequest extends WorkUnit implements Closeable, ProgressUpdater
         return this;
     }
 
+    /**
+     * Set a meter to count the bytes saved by {@link #saveContent(OutputStream)}.
+     *
+     * @param transferMeter the meter, or null
+     * @return this object
+     */
+    public HttpRequest meter(TransferMeter transferMeter) {
+        this.transferMeter = transferMeter;
+        return this;
+    }
+
     /**
      * Execute the request.
      *
@@ -121,6 +143,9 @@ public class HttpRequest extends WorkUnit implements Closeable, ProgressUpdater
                 throw new IllegalArgumentException("Connection already executed");
             }
 
+            HttpTransport.acquire(url);
+            holdingPermit = true;
+
             conn = (HttpURLConnection) reformat(url).openConnection();
 
             if (body != null) {
@@ -147,13 +172,14 @@ public class HttpRequest extends WorkUnit implements Closeable, ProgressUpdater
                 out.close();
             }
 
-            inputStream = conn.getResponseCode() == HttpURLConnection.HTTP_OK ?
+            int code = conn.getResponseCode();
+            inputStream = code >= 200 && code < 300 ?
                     conn.getInputStream() : conn.getErrorStream();
 
             successful = true;
         } finally {
             if (!successful) {
-                close();
+                abort();
             }
         }
 
@@ -194,6 +220,29 @@ public class HttpRequest extends WorkUnit implements Closeable, ProgressUpdater
         return conn.getResponseCode();
     }
 
+    /**
+     * Get the value of a response header.
+     *
+     * @param name the name of the header
+     * @return the value, or null if the header was not returned
+     */
+    public String getResponseHeader(String name) {
+        if (conn == null) {
+            throw new IllegalArgumentException("No connection has been made");
+        }
+
+        return conn.getHeaderField(name);
+    }
+
+    /**
+     * Get the number of bytes of the response that have been read so far.
+     *
+     * @return the number of bytes
+     */
+    public long getReadBytes() {
+        return readBytes;
+    }
+
     /**
      * Get the input stream.
      *
@@ -206,25 +255,181 @@ public class HttpRequest extends WorkUnit implements Closeable, ProgressUpdater
     /**
      * Buffer the returned response.
      *
+     * <p>If the server provided a Content-Length, the buffer is allocated
+     * to that size up front.</p>
+     *
      * @return the buffered response
      * @throws IOException on I/O error
      * @throws InterruptedException on interruption
      */
     public BufferedResponse returnContent() throws IOException, InterruptedException {
         if (inputStream == null) {
+            abort(); // Release the connection permit
             throw new IllegalArgumentException("No input stream available");
         }
 
+        readContentLength();
+
+        boolean successful = false;
+
         try {
-            ByteArrayOutputStream bos = new ByteArrayOutputStream();
-            int b = 0;
-            while ((b = inputStream.read()) != -1) {
-                checkInterrupted();
-                bos.write(b);
+            byte[] data;
+
+            if (contentLength >= 0 && contentLength <= MAX_PRESIZED_LENGTH) {
+                data = readFully((int) contentLength);
+            } else {
+                data = readFully();
             }
-            return new BufferedResponse(bos.toByteArray());
+
+            successful = true;
+            return new BufferedResponse(data);
         } finally {
-            close();
+            finish(successful);
+        }
+    }
+
+    /**
+     * Read a response that is expected to be the given length.
+     *
+     * @param length the expected length
+     * @return the data
+     * @throws IOException on I/O error
+     * @throws InterruptedException on interruption
+     */
+    private byte[] readFully(int length) throws IOException, InterruptedException {
+        byte[] data = new byte[length];
+        int offset = 0;
+        int len;
+
+        while (offset < length && (len = inputStream.read(data, offset, length - offset)) != -1) {
+            offset += len;
+            readBytes += len;
+            checkInterrupted();
+        }
+
+        if (offset < length) {
+            // The response was shorter than advertised
+            byte[] truncated = new byte[offset];
+            System.arraycopy(data, 0, truncated, 0, offset);
+            return truncated;
+        }
+
+        // The response was longer than advertised
+        int b = inputStream.read();
+        if (b != -1) {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream(length * 2);
+            bos.write(data);
+            bos.write(b);
+            readBytes++;
+            copy(bos);
+            return bos.toByteArray();
+        }
+
+        return data;
+    }
+
+    /**
+     * Read a response of an unknown length.
+     *
+     * @return the data
+     * @throws IOException on I/O error
+     * @throws InterruptedException on interruption
+     */
+    private byte[] readFully() throws IOException, InterruptedException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(READ_BUFFER_SIZE);
+        copy(bos);
+        return bos.toByteArray();
+    }
+
+    /**
+     * Copy the rest of the response to the given output stream.
+     *
+     * @param out the output stream
+     * @throws IOException on I/O error
+     * @throws InterruptedException on interruption
+     */
+    private void copy(OutputStream out) throws IOException, InterruptedException {
+        byte[] buffer = new byte[READ_BUFFER_SIZE];
+        int len;
+
+        while ((len = inputStream.read(buffer, 0, READ_BUFFER_SIZE)) != -1) {
+            out.write(buffer, 0, len);
+            readBytes += len;
+            checkInterrupted();
+        }
+    }
+
+    /**
+     * Read the Content-Length header, if it was returned.
+     */
+    private void readContentLength() {
+        try {
+            String field = conn.getHeaderField("Content-Length");
+            if (field != null) {
+                long len = Long.parseLong(field);
+                if (len >= 0) { // Let's just not deal with really big numbers
+                    contentLength = len;
+                }
+            }
+        } catch (NumberFormatException e) {
+        }
+    }
+
+    /**
+     * Return the result as an instance of the given class that has been
+     * deserialized from a JSON payload, parsing the response as it is read
+     * rather than buffering it first.
+     *
+     * @param cls the class
+     * @param <T> the type of class
+     * @return the object
+     * @throws IOException on I/O error
+     */
+    public <T> T asJsonStream(Class<T> cls) throws IOException {
+        if (inputStream == null) {
+            abort(); // Release the connection permit
+            throw new IllegalArgumentException("No input stream available");
+        }
+
+        boolean successful = false;
+
+        try {
+            T object = mapper.readValue(new InterruptibleInputStream(inputStream), cls);
+            successful = true;
+            return object;
+        } finally {
+            finish(successful);
+        }
+    }
+
+    /**
+     * Return the result as an instance of the given class that has been
+     * deserialized from a XML payload, parsing the response as it is read
+     * rather than buffering it first.
+     *
+     * @param cls the class
+     * @param <T> the type of class
+     * @return the object
+     * @throws IOException on I/O error
+     */
+    public <T> T asXmlStream(Class<T> cls) throws IOException {
+        if (inputStream == null) {
+            abort(); // Release the connection permit
+            throw new IllegalArgumentException("No input stream available");
+        }
+
+        boolean successful = false;
+
+        try {
+            JAXBContext context = JAXBContext.newInstance(cls);
+            Unmarshaller um = context.createUnmarshaller();
+            T object = (T) um.unmarshal(new InterruptibleInputStream(inputStream));
+            successful = true;
+            return object;
+        } catch (JAXBException e) {
+            throw new IOException(e);
+        } finally {
+            finish(successful);
         }
     }
 
@@ -237,11 +442,25 @@ public class HttpRequest extends WorkUnit implements Closeable, ProgressUpdater
      * @throws InterruptedException on interruption
      */
     public HttpRequest saveContent(File file) throws IOException, InterruptedException {
+        return saveContent(file, false);
+    }
+
+    /**
+     * Save the result to a file.
+     *
+     * @param file the file
+     * @param append true to append to the file rather than to overwrite it
+     * @return this object
+     * @throws IOException on I/O error
+     * @throws InterruptedException on interruption
+     */
+    public HttpRequest saveContent(File file, boolean append)
+            throws IOException, InterruptedException {
         FileOutputStream fos = null;
         BufferedOutputStream bos = null;
 
         try {
-            fos = new FileOutputStream(file);
+            fos = new FileOutputStream(file, append);
             bos = new BufferedOutputStream(fos);
 
             saveContent(bos);
@@ -263,18 +482,10 @@ public class HttpRequest extends WorkUnit implements Closeable, ProgressUpdater
      */
     public HttpRequest saveContent(OutputStream out) throws IOException, InterruptedException {
         BufferedInputStream bis;
-        TimerTask timerTask = SwingProgressObserver.updatePeriodically(this);
 
-        try {
-            String field = conn.getHeaderField("Content-Length");
-            if (field != null) {
-                long len = Long.parseLong(field);
-                if (len >= 0) { // Let's just not deal with really big numbers
-                    contentLength = len;
-                }
-            }
-        } catch (NumberFormatException e) {
-        }
+        readContentLength();
+
+        boolean successful = false;
 
         try {
             bis = new BufferedInputStream(inputStream);
@@ -284,30 +495,65 @@ public class HttpRequest extends WorkUnit implements Closeable, ProgressUpdater
             while ((len = bis.read(data, 0, READ_BUFFER_SIZE)) >= 0) {
                 out.write(data, 0, len);
                 readBytes += len;
+                if (transferMeter != null) {
+                    transferMeter.transferred(len);
+                }
                 checkInterrupted();
             }
+
+            successful = true;
         } finally {
-            timerTask.cancel();
-            close();
+            finish(successful);
         }
 
         return this;
     }
 
+    /**
+     * Finish with the response, reading the rest of it so that the connection
+     * can be kept alive and re-used by another request to the same host.
+     *
+     * @throws IOException on I/O error
+     */
     @Override
-    public void updateProgress() {
-        double progress = -1;
+    public void close() throws IOException {
+        boolean reusable = HttpTransport.drain(inputStream);
+        release(!reusable);
+    }
 
-        if (contentLength >= 0) {
-            progress = readBytes / (double) contentLength;
-        }
+    /**
+     * Close the connection without reading the rest of the response.
+     */
+    public void abort() {
+        closeQuietly(inputStream);
+        release(true);
+    }
 
-        push(progress, SharedLocale._("downloader.downloadingSingle", url.toString()));
+    /**
+     * Close the response, keeping the connection alive only if the response
+     * was read successfully.
+     *
+     * @param successful true if the response was read successfully
+     * @throws IOException on I/O error
+     */
+    private void finish(boolean successful) throws IOException {
+        if (successful) {
+            close();
+        } else {
+            abort();
+        }
     }
 
-    @Override
-    public void close() throws IOException {
-        if (conn != null) conn.disconnect();
+    private synchronized void release(boolean disconnect) {
+        if (conn != null && disconnect && !disconnected) {
+            disconnected = true;
+            conn.disconnect();
+        }
+
+        if (holdingPermit) {
+            holdingPermit = false;
+            HttpTransport.release(url);
+        }
     }
 
     /**
@@ -429,6 +675,43 @@ public class HttpRequest extends WorkUnit implements Closeable, ProgressUpdater
         }
     }
 
+    /**
+     * Makes reads from the response fail once the reading thread has been
+     * interrupted, so that parsers reading directly from the response can
+     * be cancelled.
+     */
+    private class InterruptibleInputStream extends FilterInputStream {
+        private InterruptibleInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            checkInterruptedIO();
+            int b = super.read();
+            if (b != -1) {
+                readBytes++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            checkInterruptedIO();
+            int read = super.read(b, off, len);
+            if (read > 0) {
+                readBytes += read;
+            }
+            return read;
+        }
+
+        private void checkInterruptedIO() throws InterruptedIOException {
+            if (Thread.currentThread().isInterrupted()) {
+                throw new InterruptedIOException();
+            }
+        }
+    }
+
     /**
      * Used to buffer the response in memory.
      */
@@ -467,7 +750,7 @@ public class HttpRequest extends WorkUnit implements Closeable, ProgressUpdater
          * @throws IOException on I/O error
          */
         public <T> T asJson(Class<T> cls) throws IOException {
-            return mapper.readValue(asString("UTF-8"), cls);
+            return mapper.readValue(data, 0, data.length, cls);
         }
 
         /**
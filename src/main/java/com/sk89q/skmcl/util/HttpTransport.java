@@ -0,0 +1,144 @@
+/*
+ * SK's Minecraft Launcher
+ * Copyright (C) 2010, 2011 Albert Pham <http://www.sk89q.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.sk89q.skmcl.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+
+import static org.apache.commons.io.IOUtils.closeQuietly;
+
+/**
+ * Manages the connections made by {@link HttpRequest}s.
+ *
+ * <p>The JRE keeps a connection alive for re-use once its response has been
+ * read to the end and its stream closed, but not if the connection is
+ * disconnected. This class limits how many connections may be open to the same
+ * host at once, sizes the JRE's keep-alive cache to match, and drains the
+ * rest of responses so that their connections can be returned to the cache.</p>
+ */
+public final class HttpTransport {
+
+    /**
+     * The maximum number of connections open to one host at the same time.
+     */
+    public static final int MAX_CONNECTIONS_PER_HOST = 8;
+
+    private static final int MAX_DRAIN_LENGTH = 1024 * 64;
+    private static final Map<String, Semaphore> permits = new HashMap<String, Semaphore>();
+
+    static {
+        // These are read once by the JRE, so set them before any connection is made
+        if (System.getProperty("http.keepAlive") == null) {
+            System.setProperty("http.keepAlive", "true");
+        }
+
+        if (System.getProperty("http.maxConnections") == null) {
+            System.setProperty("http.maxConnections", String.valueOf(MAX_CONNECTIONS_PER_HOST));
+        }
+    }
+
+    private HttpTransport() {
+    }
+
+    /**
+     * Make sure that the keep-alive settings have been applied.
+     */
+    static void init() {
+    }
+
+    /**
+     * Wait until a connection to the host of the given URL may be opened.
+     *
+     * <p>{@link #release(URL)} must be called once the connection is no
+     * longer used.</p>
+     *
+     * @param url the URL
+     * @throws InterruptedIOException on interruption
+     */
+    static void acquire(URL url) throws InterruptedIOException {
+        try {
+            getPermits(url).acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a connection to " + url.getHost());
+        }
+    }
+
+    /**
+     * Release a connection acquired with {@link #acquire(URL)}.
+     *
+     * @param url the URL
+     */
+    static void release(URL url) {
+        getPermits(url).release();
+    }
+
+    /**
+     * Read the rest of a response and close its stream, so that the connection
+     * can be kept alive.
+     *
+     * @param is the stream, or null
+     * @return true if the connection may be re-used, false if it should be disconnected
+     */
+    static boolean drain(InputStream is) {
+        if (is == null) {
+            return true;
+        }
+
+        try {
+            byte[] buffer = new byte[1024 * 8];
+            int total = 0;
+            int len;
+
+            while ((len = is.read(buffer)) != -1) {
+                total += len;
+                if (total > MAX_DRAIN_LENGTH) {
+                    // Not worth reading the rest just to keep the connection
+                    return false;
+                }
+            }
+
+            return true;
+        } catch (IOException e) {
+            return false;
+        } finally {
+            closeQuietly(is);
+        }
+    }
+
+    private static Semaphore getPermits(URL url) {
+        String key = url.getProtocol() + "://" + url.getHost() + ":" +
+                (url.getPort() != -1 ? url.getPort() : url.getDefaultPort());
+
+        synchronized (permits) {
+            Semaphore semaphore = permits.get(key);
+            if (semaphore == null) {
+                semaphore = new Semaphore(MAX_CONNECTIONS_PER_HOST, true);
+                permits.put(key, semaphore);
+            }
+            return semaphore;
+        }
+    }
+
+}
@@ -18,6 +18,8 @@
 
 package com.sk89q.skmcl.util;
 
+import com.sk89q.skmcl.concurrent.BlockingExecutors;
+
 import java.io.*;
 import java.util.logging.Logger;
 
@@ -106,7 +108,7 @@ public final class LauncherUtils {
      */
     public static void consumeBlindly(InputStream from) {
         final InputStream in = from;
-        Thread thread = new Thread(new Runnable() {
+        BlockingExecutors.start("Stream consumer", new Runnable() {
             @Override
             public void run() {
                 byte[] buffer = new byte[1024];
@@ -119,8 +121,6 @@ public final class LauncherUtils {
                 }
             }
         });
-        thread.setDaemon(true);
-        thread.start();
     }
     
     /**
@@ -0,0 +1,337 @@
+/*
+ * SK's Minecraft Launcher
+ * Copyright (C) 2010, 2011 Albert Pham <http://www.sk89q.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.sk89q.skmcl.util;
+
+import lombok.Getter;
+import lombok.ToString;
+
+import java.io.*;
+import java.util.*;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipEntry;
+
+/**
+ * Reads the central directory of a ZIP file so that the compressed data of its
+ * entries can be copied into another ZIP file without being inflated.
+ *
+ * <p>ZIP64 archives and archives that span multiple disks are not supported,
+ * and an {@link IOException} is thrown when they are opened.</p>
+ *
+ * @see RawZipWriter
+ */
+public class RawZipFile implements Closeable {
+
+    static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    static final int END_SIGNATURE = 0x06054b50;
+    static final int LOCAL_HEADER_LENGTH = 30;
+    static final int CENTRAL_HEADER_LENGTH = 46;
+    static final int END_LENGTH = 22;
+    static final int FLAG_DATA_DESCRIPTOR = 1 << 3;
+    static final int FLAG_UTF8 = 1 << 11;
+    static final String CP437 = "Cp437";
+
+    @Getter
+    private final File file;
+    private final RandomAccessFile raf;
+    @Getter
+    private final List<Entry> entries;
+    private final Map<String, Entry> names = new HashMap<String, Entry>();
+
+    /**
+     * Open a ZIP file.
+     *
+     * @param file the file
+     * @throws IOException thrown on I/O error or if the file can't be read
+     */
+    public RawZipFile(File file) throws IOException {
+        this.file = file;
+        this.raf = new RandomAccessFile(file, "r");
+
+        try {
+            entries = Collections.unmodifiableList(readCentralDirectory());
+        } catch (IOException e) {
+            raf.close();
+            throw e;
+        }
+
+        for (Entry entry : entries) {
+            if (!names.containsKey(entry.getName())) {
+                names.put(entry.getName(), entry);
+            }
+        }
+    }
+
+    /**
+     * Find the end of central directory record and read every entry
+     * in the central directory.
+     *
+     * @return the list of entries
+     * @throws IOException on I/O error
+     */
+    private List<Entry> readCentralDirectory() throws IOException {
+        long length = raf.length();
+        int searchLength = (int) Math.min(length, END_LENGTH + 0xFFFF);
+        byte[] tail = new byte[searchLength];
+        raf.seek(length - searchLength);
+        raf.readFully(tail);
+
+        int end = -1;
+        for (int i = searchLength - END_LENGTH; i >= 0; i--) {
+            if (getInt(tail, i) == END_SIGNATURE) {
+                end = i;
+                break;
+            }
+        }
+
+        if (end < 0) {
+            throw new IOException("Not a ZIP file: " + file.getAbsolutePath());
+        }
+
+        int count = getShort(tail, end + 10);
+        long cdSize = getUnsignedInt(tail, end + 12);
+        long cdOffset = getUnsignedInt(tail, end + 16);
+
+        if (getShort(tail, end + 4) != 0 || count == 0xFFFF || cdOffset == 0xFFFFFFFFL) {
+            throw new IOException("ZIP64 and multi-disk ZIP files are not supported: " +
+                    file.getAbsolutePath());
+        }
+
+        byte[] cd = new byte[(int) cdSize];
+        raf.seek(cdOffset);
+        raf.readFully(cd);
+
+        List<Entry> entries = new ArrayList<Entry>(count);
+        int pos = 0;
+
+        for (int i = 0; i < count; i++) {
+            if (pos + CENTRAL_HEADER_LENGTH > cd.length || getInt(cd, pos) != CENTRAL_HEADER_SIGNATURE) {
+                throw new IOException("Corrupt central directory in " + file.getAbsolutePath());
+            }
+
+            int nameLength = getShort(cd, pos + 28);
+            int extraLength = getShort(cd, pos + 30);
+            int commentLength = getShort(cd, pos + 32);
+
+            Entry entry = new Entry();
+            entry.flags = getShort(cd, pos + 8);
+            entry.method = getShort(cd, pos + 10);
+            entry.dosTime = getInt(cd, pos + 12);
+            entry.crc = getUnsignedInt(cd, pos + 16);
+            entry.compressedSize = getUnsignedInt(cd, pos + 20);
+            entry.size = getUnsignedInt(cd, pos + 24);
+            entry.localHeaderOffset = getUnsignedInt(cd, pos + 42);
+            entry.name = new String(cd, pos + CENTRAL_HEADER_LENGTH, nameLength, getNameCharset(entry.flags));
+
+            entries.add(entry);
+            pos += CENTRAL_HEADER_LENGTH + nameLength + extraLength + commentLength;
+        }
+
+        return entries;
+    }
+
+    /**
+     * Get the character set that entry names are encoded with, which is
+     * UTF-8 if the language encoding flag is set and code page 437 otherwise.
+     *
+     * @param flags the general purpose flags of the entry
+     * @return the name of the character set
+     */
+    static String getNameCharset(int flags) {
+        return (flags & FLAG_UTF8) != 0 ? "UTF-8" : CP437;
+    }
+
+    /**
+     * Get the entry with the given name.
+     *
+     * @param name the name
+     * @return the entry, or null if there is no such entry
+     */
+    public Entry getEntry(String name) {
+        return names.get(name);
+    }
+
+    /**
+     * Copy the compressed data of an entry to the given stream.
+     *
+     * @param entry the entry
+     * @param out the output stream
+     * @throws IOException on I/O error
+     */
+    public synchronized void copyRawData(Entry entry, OutputStream out) throws IOException {
+        raf.seek(getDataOffset(entry));
+
+        byte[] buffer = new byte[1024 * 32];
+        long remaining = entry.compressedSize;
+
+        while (remaining > 0) {
+            int len = raf.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+            if (len == -1) {
+                throw new EOFException("Unexpected end of " + file.getAbsolutePath());
+            }
+            out.write(buffer, 0, len);
+            remaining -= len;
+        }
+    }
+
+    /**
+     * Check that the local header of an entry is intact and that its data
+     * is within the file, so that copying it will not fail part way.
+     *
+     * @param entry the entry
+     * @throws IOException on I/O error or if the entry is corrupt
+     */
+    public synchronized void check(Entry entry) throws IOException {
+        if (getDataOffset(entry) + entry.compressedSize > raf.length()) {
+            throw new EOFException("Truncated data for " + entry.getName() +
+                    " in " + file.getAbsolutePath());
+        }
+    }
+
+    /**
+     * Return whether the data of an entry can be read with {@link #readData(Entry)}.
+     *
+     * @param entry the entry
+     * @return true if the compression method is supported
+     */
+    public static boolean canReadData(Entry entry) {
+        return entry.getMethod() == ZipEntry.STORED || entry.getMethod() == ZipEntry.DEFLATED;
+    }
+
+    /**
+     * Read the local header of an entry to find where its data starts.
+     *
+     * @param entry the entry
+     * @return the offset of the data
+     * @throws IOException on I/O error or if the header is corrupt
+     */
+    private long getDataOffset(Entry entry) throws IOException {
+        byte[] header = new byte[LOCAL_HEADER_LENGTH];
+
+        if (entry.localHeaderOffset + LOCAL_HEADER_LENGTH > raf.length()) {
+            throw new EOFException("Truncated local header for " + entry.getName() +
+                    " in " + file.getAbsolutePath());
+        }
+
+        raf.seek(entry.localHeaderOffset);
+        raf.readFully(header);
+
+        if (getInt(header, 0) != LOCAL_HEADER_SIGNATURE) {
+            throw new IOException("Corrupt local header for " + entry.getName() +
+                    " in " + file.getAbsolutePath());
+        }
+
+        return entry.localHeaderOffset + LOCAL_HEADER_LENGTH +
+                getShort(header, 26) + getShort(header, 28);
+    }
+
+    /**
+     * Read the uncompressed data of an entry.
+     *
+     * @param entry the entry
+     * @return the data
+     * @throws IOException on I/O error or if the compression method is not supported
+     */
+    public byte[] readData(Entry entry) throws IOException {
+        if (!canReadData(entry)) {
+            throw new IOException("Unsupported compression method for " + entry.getName());
+        }
+
+        ByteArrayOutputStream bos = new ByteArrayOutputStream((int) entry.getCompressedSize());
+        copyRawData(entry, bos);
+        byte[] raw = bos.toByteArray();
+
+        if (entry.getMethod() == ZipEntry.STORED) {
+            return raw;
+        }
+
+        Inflater inflater = new Inflater(true);
+        try {
+            // Inflating raw data needs an extra dummy byte at the end
+            byte[] input = new byte[raw.length + 1];
+            System.arraycopy(raw, 0, input, 0, raw.length);
+            inflater.setInput(input);
+
+            byte[] data = new byte[(int) entry.getSize()];
+            int pos = 0;
+            while (pos < data.length && !inflater.finished()) {
+                int len = inflater.inflate(data, pos, data.length - pos);
+                if (len == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                pos += len;
+            }
+
+            if (pos != data.length) {
+                throw new IOException("Corrupt data for " + entry.getName() +
+                        " in " + file.getAbsolutePath());
+            }
+
+            return data;
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt data for " + entry.getName() +
+                    " in " + file.getAbsolutePath(), e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        raf.close();
+    }
+
+    static int getShort(byte[] b, int off) {
+        return (b[off] & 0xFF) | ((b[off + 1] & 0xFF) << 8);
+    }
+
+    static int getInt(byte[] b, int off) {
+        return getShort(b, off) | (getShort(b, off + 2) << 16);
+    }
+
+    static long getUnsignedInt(byte[] b, int off) {
+        return getInt(b, off) & 0xFFFFFFFFL;
+    }
+
+    /**
+     * An entry in the central directory.
+     */
+    @ToString
+    public static class Entry {
+        @Getter private String name;
+        @Getter private int flags;
+        @Getter private int method;
+        @Getter private int dosTime;
+        @Getter private long crc;
+        @Getter private long compressedSize;
+        @Getter private long size;
+        private long localHeaderOffset;
+
+        /**
+         * Return whether this entry is a directory.
+         *
+         * @return true if a directory
+         */
+        public boolean isDirectory() {
+            return name.endsWith("/");
+        }
+    }
+
+}
@@ -0,0 +1,251 @@
+/*
+ * SK's Minecraft Launcher
+ * Copyright (C) 2010, 2011 Albert Pham <http://www.sk89q.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.sk89q.skmcl.util;
+
+import lombok.Data;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+
+import static com.sk89q.skmcl.util.RawZipFile.*;
+
+/**
+ * Writes a ZIP file from the compressed data of entries in other ZIP files,
+ * without inflating and deflating the data again.
+ *
+ * <p>More than 65535 entries or 4 GB of data would require ZIP64, which is
+ * not supported.</p>
+ *
+ * @see RawZipFile
+ */
+public class RawZipWriter implements Closeable {
+
+    private static final int VERSION = 20;
+
+    private final CountingOutputStream out;
+    private final List<byte[]> centralHeaders = new ArrayList<byte[]>();
+    private boolean closed;
+
+    /**
+     * Create a new writer.
+     *
+     * @param out the output stream, which will be closed when this writer is closed
+     */
+    public RawZipWriter(OutputStream out) {
+        this.out = new CountingOutputStream(out);
+    }
+
+    /**
+     * Copy an entry from another ZIP file.
+     *
+     * @param name the name to store the entry under
+     * @param from the ZIP file to copy from
+     * @param entry the entry in that ZIP file
+     * @throws IOException on I/O error
+     */
+    public void copy(String name, RawZipFile from, RawZipFile.Entry entry) throws IOException {
+        writeHeaders(name, entry.getFlags(), entry.getMethod(), entry.getDosTime(),
+                entry.getCrc(), entry.getCompressedSize(), entry.getSize());
+        from.copyRawData(entry, out);
+    }
+
+    /**
+     * Write an entry that has been compressed with {@link #compress(byte[], int)}.
+     *
+     * @param name the name to store the entry under
+     * @param dosTime the modification time in MS-DOS format
+     * @param data the compressed entry
+     * @throws IOException on I/O error
+     */
+    public void write(String name, int dosTime, Compressed data) throws IOException {
+        writeHeaders(name, 0, data.getMethod(), dosTime,
+                data.getCrc(), data.getData().length, data.getSize());
+        out.write(data.getData());
+    }
+
+    /**
+     * Compress data to be written as an entry.
+     *
+     * <p>This method can be called from any thread, so that entries can be
+     * compressed in parallel and then written in order.</p>
+     *
+     * @param data the uncompressed data
+     * @param level the compression level from 1 to 9, or 0 to store the data
+     * @return the compressed entry
+     */
+    public static Compressed compress(byte[] data, int level) {
+        CRC32 crc = new CRC32();
+        crc.update(data);
+
+        if (level == 0) {
+            return new Compressed(ZipEntry.STORED, crc.getValue(), data.length, data);
+        }
+
+        Deflater deflater = new Deflater(level, true);
+        try {
+            deflater.setInput(data);
+            deflater.finish();
+
+            ByteArrayOutputStream bos = new ByteArrayOutputStream(data.length / 2 + 64);
+            byte[] buffer = new byte[1024 * 32];
+            while (!deflater.finished()) {
+                int len = deflater.deflate(buffer);
+                bos.write(buffer, 0, len);
+            }
+
+            return new Compressed(ZipEntry.DEFLATED, crc.getValue(), data.length, bos.toByteArray());
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private void writeHeaders(String name, int flags, int method, int dosTime,
+                              long crc, long compressedSize, long size) throws IOException {
+        if (closed) {
+            throw new IOException("Writer is closed");
+        }
+
+        if (centralHeaders.size() >= 0xFFFF || out.getCount() >= 0xFFFFFFFFL) {
+            throw new IOException("Too many entries or too much data for a ZIP file");
+        }
+
+        // Keep the encoding of the name, unless it can only be written as UTF-8
+        if ((flags & FLAG_UTF8) == 0 && !Charset.forName(CP437).newEncoder().canEncode(name)) {
+            flags |= FLAG_UTF8;
+        }
+
+        byte[] nameBytes = name.getBytes(getNameCharset(flags));
+        // The sizes are written in the local header, so no data descriptor follows
+        flags &= ~FLAG_DATA_DESCRIPTOR;
+
+        byte[] local = new byte[LOCAL_HEADER_LENGTH + nameBytes.length];
+        putInt(local, 0, LOCAL_HEADER_SIGNATURE);
+        putShort(local, 4, VERSION);
+        putShort(local, 6, flags);
+        putShort(local, 8, method);
+        putInt(local, 10, dosTime);
+        putInt(local, 14, (int) crc);
+        putInt(local, 18, (int) compressedSize);
+        putInt(local, 22, (int) size);
+        putShort(local, 26, nameBytes.length);
+        putShort(local, 28, 0);
+        System.arraycopy(nameBytes, 0, local, LOCAL_HEADER_LENGTH, nameBytes.length);
+
+        byte[] central = new byte[CENTRAL_HEADER_LENGTH + nameBytes.length];
+        putInt(central, 0, CENTRAL_HEADER_SIGNATURE);
+        putShort(central, 4, VERSION);
+        putShort(central, 6, VERSION);
+        putShort(central, 8, flags);
+        putShort(central, 10, method);
+        putInt(central, 12, dosTime);
+        putInt(central, 16, (int) crc);
+        putInt(central, 20, (int) compressedSize);
+        putInt(central, 24, (int) size);
+        putShort(central, 28, nameBytes.length);
+        putInt(central, 42, (int) out.getCount());
+        System.arraycopy(nameBytes, 0, central, CENTRAL_HEADER_LENGTH, nameBytes.length);
+
+        centralHeaders.add(central);
+        out.write(local);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+
+        closed = true;
+
+        try {
+            long cdOffset = out.getCount();
+
+            for (byte[] header : centralHeaders) {
+                out.write(header);
+            }
+
+            long cdSize = out.getCount() - cdOffset;
+
+            byte[] end = new byte[END_LENGTH];
+            putInt(end, 0, END_SIGNATURE);
+            putShort(end, 8, centralHeaders.size());
+            putShort(end, 10, centralHeaders.size());
+            putInt(end, 12, (int) cdSize);
+            putInt(end, 16, (int) cdOffset);
+            out.write(end);
+            out.flush();
+        } finally {
+            out.close();
+        }
+    }
+
+    private static void putShort(byte[] b, int off, int value) {
+        b[off] = (byte) value;
+        b[off + 1] = (byte) (value >>> 8);
+    }
+
+    private static void putInt(byte[] b, int off, int value) {
+        putShort(b, off, value);
+        putShort(b, off + 2, value >>> 16);
+    }
+
+    /**
+     * The compressed data of an entry.
+     */
+    @Data
+    public static class Compressed {
+        private final int method;
+        private final long crc;
+        private final long size;
+        private final byte[] data;
+    }
+
+    /**
+     * Keeps track of the number of bytes written.
+     */
+    private static class CountingOutputStream extends FilterOutputStream {
+        private long count;
+
+        private CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+
+        public long getCount() {
+            return count;
+        }
+    }
+
+}
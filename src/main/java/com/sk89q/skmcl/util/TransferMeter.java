@@ -0,0 +1,189 @@
+/*
+ * SK's Minecraft Launcher
+ * Copyright (C) 2010, 2011 Albert Pham <http://www.sk89q.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.sk89q.skmcl.util;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts the bytes of a set of transfers and estimates the transfer rate
+ * and the time remaining.
+ *
+ * <p>Transfers only update atomic counters. The rate is an exponential moving
+ * average that is updated each time {@link #sample()} is called, which
+ * should be done at a regular interval from one thread.</p>
+ *
+ * <p>Transfers that are expected but whose size is not yet known are
+ * assumed to be as large as the average transfer whose size is known.</p>
+ */
+public class TransferMeter {
+
+    private static final double SMOOTHING = 0.3;
+
+    private final AtomicLong expected = new AtomicLong();
+    private final AtomicLong done = new AtomicLong();
+    private final AtomicLong transferred = new AtomicLong();
+    private final AtomicInteger sizedCount = new AtomicInteger();
+    private final AtomicInteger unsizedCount = new AtomicInteger();
+
+    private boolean sampled;
+    private long lastSampleTime;
+    private long lastTransferred;
+    private volatile double rate = -1;
+
+    /**
+     * Add a transfer that is expected to be made.
+     *
+     * @param size the size in bytes, or -1 if it is not yet known
+     */
+    public void expect(long size) {
+        if (size >= 0) {
+            expected.addAndGet(size);
+            sizedCount.incrementAndGet();
+        } else {
+            unsizedCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * Record the size of a transfer that was added with an unknown size.
+     *
+     * @param size the size in bytes
+     */
+    public void resolveSize(long size) {
+        unsizedCount.decrementAndGet();
+        expect(size);
+    }
+
+    /**
+     * Correct the expected size after a transfer turned out to be larger or
+     * smaller than expected.
+     *
+     * @param delta the difference in bytes
+     */
+    public void adjustExpected(long delta) {
+        expected.addAndGet(delta);
+    }
+
+    /**
+     * Record bytes that were just transferred.
+     *
+     * @param bytes the number of bytes
+     */
+    public void transferred(long bytes) {
+        transferred.addAndGet(bytes);
+        done.addAndGet(bytes);
+    }
+
+    /**
+     * Record bytes that are complete without being transferred, such as
+     * those of a file that was already downloaded, or take back bytes that
+     * have to be transferred again.
+     *
+     * @param delta the difference in bytes
+     */
+    public void adjustDone(long delta) {
+        done.addAndGet(delta);
+    }
+
+    /**
+     * Get the total number of bytes expected, including an estimate for
+     * transfers with an unknown size.
+     *
+     * @return the number of bytes
+     */
+    public long getExpected() {
+        long total = expected.get();
+        int sized = sizedCount.get();
+        int unsized = unsizedCount.get();
+
+        if (unsized > 0 && sized > 0) {
+            total += total / sized * unsized;
+        }
+
+        return total;
+    }
+
+    /**
+     * Get the number of bytes that are complete.
+     *
+     * @return the number of bytes
+     */
+    public long getDone() {
+        return done.get();
+    }
+
+    /**
+     * Get the fraction of the expected bytes that are complete.
+     *
+     * @return a number between 0 and 1, or -1 if nothing is expected yet
+     */
+    public double getProgress() {
+        long total = getExpected();
+
+        if (total <= 0) {
+            return -1;
+        }
+
+        return Math.max(0, Math.min(1, getDone() / (double) total));
+    }
+
+    /**
+     * Get the average transfer rate.
+     *
+     * @return the rate in bytes per second, or -1 if not yet measured
+     */
+    public double getRate() {
+        return rate;
+    }
+
+    /**
+     * Get the estimated time until all expected bytes are complete.
+     *
+     * @return the time in seconds, or -1 if it can't be estimated
+     */
+    public long getRemainingSeconds() {
+        double rate = this.rate;
+
+        if (rate <= 0) {
+            return -1;
+        }
+
+        long remaining = Math.max(0, getExpected() - getDone());
+        return (long) Math.ceil(remaining / rate);
+    }
+
+    /**
+     * Measure the transfer rate since the last sample.
+     */
+    public synchronized void sample() {
+        long now = System.nanoTime();
+        long total = transferred.get();
+
+        if (sampled && now > lastSampleTime) {
+            double current = (total - lastTransferred) / ((now - lastSampleTime) / 1e9);
+            rate = rate < 0 ? current : SMOOTHING * current + (1 - SMOOTHING) * rate;
+        }
+
+        sampled = true;
+        lastSampleTime = now;
+        lastTransferred = total;
+    }
+
+}